@@ -0,0 +1,78 @@
+import java.util.Arrays;
+
+/**
+ * A* search guided by the Manhattan distance to the end, which never overestimates on a grid of
+ * unit steps, so the first time the end is expanded its path is a shortest one. Ties in f go to
+ * the node furthest from the start, which keeps the search running along corridors instead of
+ * fanning out across open floor.
+ */
+public class AStarSearch implements SearchStrategy {
+
+  @Override
+  public int[] search(NodeGrid grid, int start, int end, SolveMonitor monitor) {
+    byte[] moves = new byte[grid.size()];
+    int[] cost = new int[grid.size()];
+    Arrays.fill(cost, Integer.MAX_VALUE);
+    NodeHeap open = new NodeHeap();
+
+    cost[start] = 0;
+    moves[start] = 1; //Any mark will do, the start is never walked past
+    open.push(start, key(grid.distance(start, end), 0));
+    int expanded = 0;
+
+    while (!open.isEmpty()) {
+      long top = open.peekKey();
+      int current = open.pop();
+      if (costOf(top) != cost[current]) { //Stale entry, the node was pushed again cheaper
+        continue;
+      }
+      expanded++;
+      monitor.expanded(expanded, open.size());
+
+      if (current == end) {
+        System.out.println("Found Ending Node, expanded " + Integer.toString(expanded) + " nodes");
+        return grid.walkBack(moves, start, end);
+      }
+
+      int next = cost[current] + 1;
+      for (int move = 0; move < 4; move++) {
+        int neighbor = grid.step(current, move);
+        if (neighbor >= 0 && next < cost[neighbor]) {
+          cost[neighbor] = next;
+          moves[neighbor] = (byte) (move + 1);
+          open.push(neighbor, key(next + grid.distance(neighbor, end), next));
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Packs an f value and a cost into a heap key ordering by f, then by larger cost.
+   * @param f The cost plus the heuristic.
+   * @param cost The cost from the search's origin.
+   * @return The key.
+   */
+  static long key(int f, int cost) {
+    return ((long) f << 32) | (Integer.MAX_VALUE - cost);
+  }
+
+  /**
+   * Unpacks the cost from a heap key.
+   * @param key The key.
+   * @return The cost it was pushed with.
+   */
+  static int costOf(long key) {
+    return Integer.MAX_VALUE - (int) key;
+  }
+
+  /**
+   * Unpacks the f value from a heap key.
+   * @param key The key.
+   * @return The f value it was pushed with.
+   */
+  static int fOf(long key) {
+    return (int) (key >>> 32);
+  }
+}
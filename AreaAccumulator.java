@@ -0,0 +1,153 @@
+import java.awt.image.*;
+import java.util.Arrays;
+
+/**
+ * Shrinks an image by averaging every source pixel into the output pixel it lands on. Source rows
+ * are added in order, possibly a strip at a time and subsampled, and only the output row currently
+ * being filled is held as running sums.
+ */
+public class AreaAccumulator {
+
+  private final BufferedImage output;
+  private final int height;
+  private final int sub;
+  private final boolean grey;
+  private final int[] column; // Output column of each subsampled source column
+  private final long[] sums; // Per output column sums, three channels when in colour
+  private final int[] counts; // Source pixels summed into each output column
+  private final int[] row; // One source row of pixels
+  private final int[] averages; // One output row of pixels
+  private int outRow = 0; // Output row being filled
+
+  /**
+   * Shrinks a whole image in one go.
+   * @param img The image to shrink.
+   * @param width The width of the result, at most the image's.
+   * @param height The height of the result, at most the image's.
+   * @param grey Whether to average grey samples, giving TYPE_BYTE_GRAY, rather than RGB channels.
+   * @return The shrunk image, TYPE_INT_RGB unless grey is set.
+   */
+  public static BufferedImage shrink(BufferedImage img, int width, int height, boolean grey) {
+    BufferedImage output = new BufferedImage(width, height, grey ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+    AreaAccumulator accumulator = new AreaAccumulator(output, img.getWidth(), img.getHeight(), 1, grey);
+    accumulator.add(img, 0);
+    accumulator.finish();
+    return output;
+  }
+
+  /**
+   * Prepares to fill an output image.
+   * @param output The image to fill, TYPE_BYTE_GRAY when grey is set.
+   * @param width The width of the full-resolution source.
+   * @param height The height of the full-resolution source.
+   * @param sub The subsampling of the rows that will be added, 1 for every pixel.
+   * @param grey Whether to average grey samples rather than RGB channels.
+   */
+  public AreaAccumulator(BufferedImage output, int width, int height, int sub, boolean grey) {
+    int decodedW = (width + sub - 1) / sub;
+    this.output = output;
+    this.height = height;
+    this.sub = sub;
+    this.grey = grey;
+    this.column = new int[decodedW];
+    this.sums = new long[output.getWidth() * (grey ? 1 : 3)];
+    this.counts = new int[output.getWidth()];
+    this.row = new int[decodedW];
+    this.averages = new int[output.getWidth()];
+
+    for (int x = 0; x < decodedW; x++) {
+      column[x] = (int) ((long) x * sub * output.getWidth() / width);
+    }
+  }
+
+  /**
+   * Adds a strip of source rows.
+   * @param strip The rows, subsampled by the accumulator's subsampling. A whole TYPE_BYTE_GRAY image
+   *   when grey, or TYPE_INT_RGB when not, is read fastest.
+   * @param y0 The full-resolution source row of the strip's first row, a multiple of the subsampling.
+   */
+  public void add(BufferedImage strip, int y0) {
+    Raster raster = strip.getRaster();
+    int decodedW = Math.min(strip.getWidth(), row.length);
+    boolean packed = raster.getParent() == null // A whole image, so rows are read straight from its array
+        && strip.getType() == (grey ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+
+    for (int y = 0; y < strip.getHeight(); y++) {
+      int target = (int) ((long) (y0 + y * sub) * output.getHeight() / height);
+      while (outRow < target) {
+        flush();
+      }
+
+      if (grey) {
+        if (packed) {
+          byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+          for (int x = 0, i = y * strip.getWidth(); x < decodedW; x++, i++) {
+            sums[column[x]] += data[i] & 0xFF;
+            counts[column[x]]++;
+          }
+          continue;
+        }
+        raster.getSamples(0, y, decodedW, 1, 0, row);
+        for (int x = 0; x < decodedW; x++) {
+          sums[column[x]] += row[x];
+          counts[column[x]]++;
+        }
+      } else {
+        int[] pixels = row;
+        int offset = 0;
+        if (packed) {
+          pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+          offset = y * strip.getWidth();
+        } else {
+          strip.getRGB(0, y, decodedW, 1, row, 0, decodedW);
+        }
+        for (int x = 0; x < decodedW; x++) {
+          int rgb = pixels[offset + x];
+          int c = column[x] * 3;
+          sums[c] += (rgb >> 16) & 0xFF;
+          sums[c + 1] += (rgb >> 8) & 0xFF;
+          sums[c + 2] += rgb & 0xFF;
+          counts[column[x]]++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes out every remaining output row.
+   */
+  public void finish() {
+    while (outRow < output.getHeight()) {
+      flush();
+    }
+  }
+
+  /**
+   * Writes the averages of the current output row and moves on to the next.
+   */
+  private void flush() {
+    int outW = output.getWidth();
+
+    for (int x = 0; x < outW; x++) {
+      int n = Math.max(1, counts[x]);
+      if (grey) {
+        averages[x] = (int) ((sums[x] + n / 2) / n);
+      } else {
+        int r = (int) ((sums[x * 3] + n / 2) / n);
+        int g = (int) ((sums[x * 3 + 1] + n / 2) / n);
+        int b = (int) ((sums[x * 3 + 2] + n / 2) / n);
+        averages[x] = (r << 16) | (g << 8) | b;
+      }
+    }
+
+    if (grey) {
+      output.getRaster().setSamples(0, outRow, outW, 1, 0, averages);
+    } else {
+      output.setRGB(0, outRow, outW, 1, averages, 0, outW);
+    }
+
+    Arrays.fill(sums, 0);
+    Arrays.fill(counts, 0);
+    outRow++;
+  }
+}
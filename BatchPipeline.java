@@ -0,0 +1,462 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+
+/**
+ * Solves a batch of maze images without the UI: decode, binarize, solve, then write the image with
+ * the path drawn on it and a JSON description of the path. Jobs are read one at a time into a
+ * bounded queue that a fixed pool of workers takes from, so a slow disk or a hard maze holds the
+ * reader back instead of filling the heap with decoded images. Each worker runs all four stages on
+ * its own ImageProcessing, which caches per image and is not shared, and records how long each
+ * stage took; the summary gives throughput and the p50 / p99 of every stage.
+ *
+ * Run from Main with arguments, see USAGE.
+ */
+public class BatchPipeline {
+
+  static final String USAGE = String.join("\n",
+      "Usage: java Main --batch <directory | manifest> --out <directory> [options]",
+      "  A manifest has one image per line: path,startX,startY,endX,endY (relative paths are from",
+      "  the manifest's directory, # starts a comment). A directory solves every image in it from",
+      "  --start to --end. Coordinates are in the image after shrinking to --max-side.",
+      "  --start x,y        Starting point for a directory",
+      "  --end x,y          Ending point for a directory",
+      "  --threads n        Images solved at once (default: available processors)",
+      "  --queue n          Jobs read ahead of the workers (default: 2 x threads)",
+      "  --max-side n       Longest side images are shrunk to, 0 to keep them whole (default 900)",
+      "  --edge threshold   Binarize by edge detection instead of contrast detection",
+      "  --quick            Solve coarse to fine instead of at a pixel size of 1",
+      "  --budget ms        Time each solve may take, 0 for no limit (default 60000)");
+
+  private static final String[] STAGES = {"decode", "process", "solve", "write", "total"};
+  private static final Job END = new Job(null, null, null); // Tells a worker the queue is finished
+
+  /**
+   * One image and the points to solve it between.
+   */
+  static class Job {
+    final File image;
+    final int[] start;
+    final int[] end;
+    final String name; // Base name of the output files
+
+    Job(File image, int[] start, int[] end) {
+      this(image, start, end, image == null ? null : baseName(image.getName()));
+    }
+
+    Job(File image, int[] start, int[] end, String name) {
+      this.image = image;
+      this.start = start;
+      this.end = end;
+      this.name = name;
+    }
+  }
+
+  private final Path output;
+  private final int threads;
+  private final int queueSize;
+  private int maxSide = 900;
+  private int edgeThreshold = -1; // Contrast detection when negative
+  private boolean quick = false;
+  private long budgetMillis = 60_000;
+
+  private final ConcurrentLinkedQueue<long[]> timings = new ConcurrentLinkedQueue<>(); // Nanoseconds per stage, per image
+  private final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<String> unsolved = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Creates a pipeline.
+   * @param output The directory the results are written to.
+   * @param threads The number of images solved at once.
+   * @param queueSize The number of jobs read ahead of the workers.
+   */
+  public BatchPipeline(Path output, int threads, int queueSize) {
+    if (threads < 1 || queueSize < 1) {
+      throw new IllegalArgumentException("Threads and queue size must be at least 1, were " + threads + " and " + queueSize);
+    }
+
+    this.output = output;
+    this.threads = threads;
+    this.queueSize = queueSize;
+  }
+
+  /**
+   * Parses the command line, runs the batch and prints the summary.
+   * @param args The arguments, see USAGE.
+   * @return The exit status: 0 when every image was processed, 1 when any failed, 2 for bad
+   *   arguments.
+   */
+  public static int runCommand(String[] args) {
+    try {
+      String input = null;
+      String out = null;
+      int[] start = null;
+      int[] end = null;
+      int threads = Runtime.getRuntime().availableProcessors();
+      int queue = -1;
+      int maxSide = 900;
+      int edgeThreshold = -1;
+      boolean quick = false;
+      long budget = 60_000;
+
+      for (int i = 0; i < args.length; i++) {
+        String option = args[i];
+        if (option.equals("--quick")) {
+          quick = true;
+          continue;
+        }
+        if (i + 1 >= args.length) {
+          throw new IllegalArgumentException("Missing value for " + option);
+        }
+
+        String value = args[++i];
+        switch (option) {
+          case "--batch" -> input = value;
+          case "--out" -> out = value;
+          case "--start" -> start = parsePoint(value);
+          case "--end" -> end = parsePoint(value);
+          case "--threads" -> threads = parseInt(value);
+          case "--queue" -> queue = parseInt(value);
+          case "--max-side" -> maxSide = parseInt(value);
+          case "--edge" -> edgeThreshold = parseInt(value);
+          case "--budget" -> budget = parseInt(value);
+          default -> throw new IllegalArgumentException("Unknown option " + option);
+        }
+      }
+      if (input == null || out == null) {
+        throw new IllegalArgumentException("--batch and --out are required");
+      }
+
+      File source = new File(input);
+      if (source.isDirectory() && (start == null || end == null)) {
+        throw new IllegalArgumentException("--start and --end are required for a directory");
+      }
+      List<Job> jobs = source.isDirectory() ? listDirectory(source, start, end) : readManifest(source);
+
+      BatchPipeline pipeline = new BatchPipeline(Paths.get(out), threads, queue < 0 ? 2 * threads : queue);
+      pipeline.setMaxSide(maxSide);
+      pipeline.setEdgeThreshold(edgeThreshold);
+      pipeline.setQuick(quick);
+      pipeline.setBudget(budget);
+      return pipeline.run(jobs) ? 0 : 1;
+    } catch (IllegalArgumentException ex) {
+      System.err.println(ex.getMessage());
+      System.err.println(USAGE);
+      return 2;
+    } catch (IOException ex) {
+      System.err.println("Unable to read the batch: " + ex.getMessage());
+      return 2;
+    }
+  }
+
+  /**
+   * Sets the longest side images are shrunk to while decoding.
+   * @param maxSide The limit in pixels, or 0 to keep images whole.
+   */
+  public void setMaxSide(int maxSide) {
+    this.maxSide = maxSide;
+  }
+
+  /**
+   * Sets the images to be binarized by edge detection instead of contrast detection.
+   * @param edgeThreshold The minimum gradient magnitude of an edge, or -1 for contrast detection.
+   */
+  public void setEdgeThreshold(int edgeThreshold) {
+    this.edgeThreshold = edgeThreshold;
+  }
+
+  /**
+   * Sets whether images are solved coarse to fine, like the UI's quick solve.
+   * @param quick True to solve coarse to fine.
+   */
+  public void setQuick(boolean quick) {
+    this.quick = quick;
+  }
+
+  /**
+   * Sets how long each solve may take before it is given up.
+   * @param budgetMillis The budget in milliseconds, or 0 for no limit.
+   */
+  public void setBudget(long budgetMillis) {
+    this.budgetMillis = budgetMillis;
+  }
+
+  /**
+   * Runs every job and prints the summary.
+   * @param jobs The jobs, handed to the workers one at a time as the queue has room. Each image's
+   *   outputs are named after it, with -2, -3, ... added to the later of any images with the same
+   *   name.
+   * @return True when no image failed. Images without a path still count as processed.
+   * @throws IOException When the output directory cannot be created.
+   */
+  public boolean run(Iterable<Job> jobs) throws IOException {
+    Files.createDirectories(output);
+    BlockingQueue<Job> queue = new ArrayBlockingQueue<>(queueSize);
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<?>> workers = new ArrayList<>();
+    long began = System.nanoTime();
+
+    for (int i = 0; i < threads; i++) {
+      workers.add(pool.submit(() -> work(queue)));
+    }
+
+    try {
+      Set<String> names = new HashSet<>();
+      for (Job job : jobs) {
+        String name = job.name;
+        for (int n = 2; !names.add(name.toLowerCase(Locale.ROOT)); n++) { //Same name as an earlier image, like a/maze.png and b/maze.jpg
+          name = job.name + "-" + n;
+        }
+        queue.put(name.equals(job.name) ? job : new Job(job.image, job.start, job.end, name)); // Waits while the workers are behind
+      }
+      for (int i = 0; i < threads; i++) {
+        queue.put(END);
+      }
+      for (Future<?> worker : workers) {
+        worker.get();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      pool.shutdownNow();
+      return false;
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException("Worker failed", ex.getCause());
+    } finally {
+      pool.shutdown();
+    }
+
+    printSummary(System.nanoTime() - began);
+    return failures.isEmpty();
+  }
+
+  /**
+   * Takes jobs until the end marker, each with its own ImageProcessing and decoder.
+   */
+  private void work(BlockingQueue<Job> queue) {
+    ImageProcessing imageProcessor = new ImageProcessing();
+    imageProcessor.setParallelism(1); // The pool already keeps every thread busy with its own image
+    imageProcessor.setMaxSide(maxSide);
+    StripDecoder decoder = new StripDecoder();
+
+    try {
+      for (Job job = queue.take(); job != END; job = queue.take()) {
+        try {
+          solve(job, imageProcessor, decoder);
+        } catch (Throwable ex) { //Errors too, such as running out of heap, so a worker never dies and leaves the queue full
+          failures.add(job.image + ": " + ex);
+          System.err.println("Failed " + job.image + ": " + ex.getMessage());
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Runs the four stages for one image.
+   */
+  private void solve(Job job, ImageProcessing imageProcessor, StripDecoder decoder) throws IOException {
+    long[] stages = new long[STAGES.length];
+    long began = System.nanoTime();
+
+    BufferedImage image = decoder.read(job.image, maxSide, false);
+    long decoded = System.nanoTime();
+
+    WallGrid grid = edgeThreshold < 0 ? imageProcessor.contrastGrid(image) : imageProcessor.edgeGrid(image, edgeThreshold);
+    long processed = System.nanoTime();
+
+    SolutionPath path = null;
+    String problem = null;
+    try {
+      MazeSolver solver = new MazeSolver(new PreparedMaze(grid, 1), job.start, job.end);
+      solver.setStrategy(new JumpPointSearch());
+      solver.setMonitor(budgetMillis == 0 ? SolveMonitor.NONE : new SolveMonitor(budgetMillis, null));
+      path = quick ? solver.solvePathCoarseToFine(2) : solver.solvePath();
+      if (path == null) {
+        problem = "No solution found";
+      }
+    } catch (IllegalArgumentException | CancellationException ex) { //Endpoint on a wall, or out of time
+      problem = ex.getMessage();
+    }
+    long solved = System.nanoTime();
+
+    write(job, image, path, problem);
+    long written = System.nanoTime();
+
+    stages[0] = decoded - began;
+    stages[1] = processed - decoded;
+    stages[2] = solved - processed;
+    stages[3] = written - solved;
+    stages[4] = written - began;
+    timings.add(stages);
+    if (problem != null) {
+      unsolved.add(job.image + ": " + problem);
+    }
+    System.out.println((problem == null ? "Solved " : "Unsolved ") + job.image + " in " + Long.toString(stages[4] / 1_000_000) + " ms");
+  }
+
+  /**
+   * Writes the image with the path drawn on it and the JSON description.
+   */
+  private void write(Job job, BufferedImage image, SolutionPath path, String problem) throws IOException {
+    if (path != null) {
+      BufferedImage solutionImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = solutionImage.createGraphics();
+      g.drawImage(image, 0, 0, null);
+      g.setColor(Color.BLUE);
+      path.draw(g);
+      g.dispose();
+      ImageIO.write(solutionImage, "png", output.resolve(job.name + ".png").toFile());
+    }
+
+    try (BufferedWriter out = Files.newBufferedWriter(output.resolve(job.name + ".json"))) {
+      out.write("{\"image\": " + quote(job.image.getPath()));
+      out.write(", \"width\": " + image.getWidth() + ", \"height\": " + image.getHeight());
+      out.write(", \"start\": [" + job.start[0] + ", " + job.start[1] + "], \"end\": [" + job.end[0] + ", " + job.end[1] + "]");
+      out.write(", \"solved\": " + (path != null));
+      if (problem != null) {
+        out.write(", \"problem\": " + quote(problem));
+      }
+      if (path != null) {
+        out.write(String.format(Locale.ROOT, ", \"length\": %.1f, \"points\": [", path.getLength()));
+        for (int i = 0; i < path.getPointCount(); i++) {
+          out.write((i == 0 ? "[" : ", [") + path.getX(i) + ", " + path.getY(i) + "]");
+        }
+        out.write("]");
+      }
+      out.write("}\n");
+    }
+  }
+
+  /**
+   * Gets a file name without its extension.
+   */
+  private static String baseName(String name) {
+    int dot = name.lastIndexOf('.');
+    return dot > 0 ? name.substring(0, dot) : name;
+  }
+
+  private static String quote(String text) {
+    StringBuilder quoted = new StringBuilder("\"");
+    for (char c : text.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      } else if (c < 0x20) {
+        quoted.append(String.format("\\u%04x", (int) c));
+      } else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+
+  /**
+   * Prints throughput and the p50 / p99 latency of each stage.
+   */
+  private void printSummary(long elapsed) {
+    long[][] all = timings.toArray(new long[0][]);
+    int images = all.length;
+    System.out.println(String.format(Locale.ROOT, "Processed %d images in %.2f s: %.2f images/s on %d threads, %d unsolved, %d failed",
+        images, elapsed / 1e9, images / (elapsed / 1e9), threads, unsolved.size(), failures.size()));
+    if (images == 0) {
+      return;
+    }
+
+    long[] stage = new long[images];
+    for (int s = 0; s < STAGES.length; s++) {
+      for (int i = 0; i < images; i++) {
+        stage[i] = all[i][s];
+      }
+      Arrays.sort(stage);
+      System.out.println(String.format(Locale.ROOT, "  %-8s p50 %8.1f ms   p99 %8.1f ms", STAGES[s], percentile(stage, 50) / 1e6, percentile(stage, 99) / 1e6));
+    }
+  }
+
+  /**
+   * Gets a nearest-rank percentile of sorted values.
+   */
+  private static long percentile(long[] sorted, int percent) {
+    int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+    return sorted[Math.max(0, rank - 1)];
+  }
+
+  /**
+   * Lists the images of a directory, in name order, all solved between the same points.
+   */
+  static List<Job> listDirectory(File directory, int[] start, int[] end) throws IOException {
+    List<Job> jobs = new ArrayList<>();
+    try (Stream<Path> files = Files.list(directory.toPath())) {
+      files.filter(Files::isRegularFile)
+          .filter(file -> file.getFileName().toString().toLowerCase(Locale.ROOT).matches(".*\\.(png|jpe?g|gif|bmp|tiff?)"))
+          .sorted()
+          .forEach(file -> jobs.add(new Job(file.toFile(), start, end)));
+    }
+    return jobs;
+  }
+
+  /**
+   * Reads the jobs of a manifest, see USAGE.
+   */
+  static List<Job> readManifest(File manifest) throws IOException {
+    File directory = manifest.getAbsoluteFile().getParentFile();
+    List<Job> jobs = new ArrayList<>();
+    try (BufferedReader in = Files.newBufferedReader(manifest.toPath())) {
+      int number = 0;
+      for (String line = in.readLine(); line != null; line = in.readLine()) {
+        number++;
+        line = line.strip();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+
+        String[] fields = line.split(",");
+        if (fields.length != 5) {
+          throw new IllegalArgumentException("Line " + number + " of " + manifest + " should be path,startX,startY,endX,endY");
+        }
+        File image = new File(fields[0].strip());
+        jobs.add(new Job(image.isAbsolute() ? image : new File(directory, fields[0].strip()),
+            new int[] {parseInt(fields[1]), parseInt(fields[2])}, new int[] {parseInt(fields[3]), parseInt(fields[4])}));
+      }
+    }
+    return jobs;
+  }
+
+  private static int[] parsePoint(String text) {
+    String[] parts = text.split(",");
+    if (parts.length != 2) {
+      throw new IllegalArgumentException("Expected a point as x,y, was " + text);
+    }
+    return new int[] {parseInt(parts[0]), parseInt(parts[1])};
+  }
+
+  private static int parseInt(String text) {
+    try {
+      return Integer.parseInt(text.strip());
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Expected a number, was " + text.strip());
+    }
+  }
+}
@@ -0,0 +1,123 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Solves many start / end queries on one prepared maze. Queries are grouped by their starting node:
+ * a group with several distinct ends grows one breadth first tree and walks every path back out
+ * of it, while a group with a single end runs the search strategy. Queries whose endpoints lie in
+ * different regions are answered from the component labels without searching, and groups run
+ * concurrently since the maze is never written to. Groups run on the solver's own pool, which
+ * close() shuts down.
+ */
+public class BatchSolver implements AutoCloseable {
+
+  private final PreparedMaze maze;
+  private final ForkJoinPool pool;
+  private final BreadthFirstSearch trees = new BreadthFirstSearch();
+  private SearchStrategy strategy = new JumpPointSearch();
+
+  /**
+   * Creates a solver for a maze.
+   * @param maze The prepared maze.
+   * @param parallelism The number of groups to solve at once.
+   */
+  public BatchSolver(PreparedMaze maze, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1, was " + parallelism);
+    }
+
+    this.maze = maze;
+    this.pool = new ForkJoinPool(parallelism);
+  }
+
+  /**
+   * Sets how groups with a single end are searched. Jump Point Search is used until this is called.
+   * The strategy is shared by concurrent groups, which every SearchStrategy allows.
+   * @param strategy The search strategy.
+   */
+  public void setStrategy(SearchStrategy strategy) {
+    this.strategy = strategy;
+  }
+
+  /**
+   * Solves a batch of queries.
+   * @param queries Each query's {starting point, ending point}.
+   * @return Each query's path, in order, or null when there is no path or no open node near one of
+   *   its points.
+   */
+  public int[][][] solveAll(int[][][] queries) {
+    int count = queries.length;
+    int[] starts = new int[count];
+    int[] ends = new int[count];
+    long[] order = new long[count]; // Starting node in the high half, query index in the low half
+
+    for (int i = 0; i < count; i++) {
+      starts[i] = maze.nearestNode(queries[i][0]);
+      ends[i] = maze.nearestNode(queries[i][1]);
+      order[i] = ((long) starts[i] << 32) | i;
+    }
+    Arrays.sort(order);
+
+    int[][][] paths = new int[count][][];
+    List<ForkJoinTask<?>> groups = new ArrayList<>();
+    for (int first = 0, last; first < count; first = last) {
+      int start = (int) (order[first] >> 32);
+      last = first + 1;
+      while (last < count && (int) (order[last] >> 32) == start) {
+        last++;
+      }
+
+      if (start >= 0) {
+        int[] members = new int[last - first];
+        for (int i = 0; i < members.length; i++) {
+          members[i] = (int) order[first + i];
+        }
+        groups.add(pool.submit(() -> solveGroup(start, members, ends, paths)));
+      }
+    }
+
+    for (ForkJoinTask<?> group : groups) {
+      group.join();
+    }
+    System.out.println("Solved " + Integer.toString(count) + " queries in " + Integer.toString(groups.size()) + " groups");
+
+    return paths;
+  }
+
+  /**
+   * Solves the queries that share a starting node, writing their paths into their slots.
+   */
+  private void solveGroup(int start, int[] members, int[] ends, int[][][] paths) {
+    int[] reached = new int[members.length]; // Queries whose end shares the start's region
+    int[] targets = new int[members.length];
+    int count = 0;
+    for (int query : members) {
+      if (ends[query] >= 0 && maze.connected(start, ends[query])) {
+        reached[count] = query;
+        targets[count++] = ends[query];
+      }
+    }
+    if (count == 0) {
+      return;
+    }
+
+    targets = Arrays.copyOf(targets, count);
+    boolean shared = Arrays.stream(targets).distinct().count() == 1;
+    int[][] found = shared ? new int[][] {strategy.search(maze.getNodes(), start, targets[0])} : trees.searchAll(maze.getNodes(), start, targets);
+
+    for (int i = 0; i < count; i++) {
+      paths[reached[i]] = maze.toCoordinates(found[shared ? 0 : i]);
+    }
+  }
+
+  /**
+   * Shuts down the solver's pool once any running batch finishes. The solver cannot be used after.
+   */
+  @Override
+  public void close() {
+    pool.shutdown();
+  }
+}
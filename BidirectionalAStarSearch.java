@@ -0,0 +1,90 @@
+import java.util.Arrays;
+
+/**
+ * Two A* searches, one from each end, each guided by the Manhattan distance to the other end.
+ * Whenever a node is reached from both sides the combined cost is a candidate path; once the
+ * cheapest f left on either side is no smaller than the best candidate, no unexplored path can
+ * beat it and the search stops. The side with the smaller open list is expanded next.
+ */
+public class BidirectionalAStarSearch implements SearchStrategy {
+
+  @Override
+  public int[] search(NodeGrid grid, int start, int end, SolveMonitor monitor) {
+    if (start == end) {
+      return new int[] {start};
+    }
+
+    Side forward = new Side(grid, start, end);
+    Side backward = new Side(grid, end, start);
+    int best = Integer.MAX_VALUE;
+    int meeting = -1;
+    int expanded = 0;
+
+    while (!forward.open.isEmpty() && !backward.open.isEmpty()) {
+      long lowest = Math.max(forward.open.peekKey(), backward.open.peekKey());
+      if (AStarSearch.fOf(lowest) >= best) { //Neither side can still find anything shorter
+        break;
+      }
+
+      Side side = forward.open.size() <= backward.open.size() ? forward : backward;
+      Side other = side == forward ? backward : forward;
+      long top = side.open.peekKey();
+      int current = side.open.pop();
+      if (AStarSearch.costOf(top) != side.cost[current]) { //Stale entry
+        continue;
+      }
+      expanded++;
+      monitor.expanded(expanded, forward.open.size() + backward.open.size());
+
+      int next = side.cost[current] + 1;
+      for (int move = 0; move < 4; move++) {
+        int neighbor = grid.step(current, move);
+        if (neighbor < 0 || next >= side.cost[neighbor]) {
+          continue;
+        }
+
+        side.cost[neighbor] = next;
+        side.moves[neighbor] = (byte) (move + 1);
+        side.open.push(neighbor, AStarSearch.key(next + grid.distance(neighbor, side.target), next));
+        if (other.cost[neighbor] != Integer.MAX_VALUE && next + other.cost[neighbor] < best) {
+          best = next + other.cost[neighbor];
+          meeting = neighbor;
+        }
+      }
+    }
+
+    if (meeting < 0) {
+      return null;
+    }
+
+    System.out.println("Found Ending Node, expanded " + Integer.toString(expanded) + " nodes");
+    int[] head = grid.walkBack(forward.moves, start, meeting);
+    int[] tail = grid.walkBack(backward.moves, end, meeting);
+    int[] path = Arrays.copyOf(head, head.length + tail.length - 1);
+    for (int i = 0; i < tail.length - 1; i++) { //Tail runs end to meeting, append it reversed
+      path[head.length + i] = tail[tail.length - 2 - i];
+    }
+
+    return path;
+  }
+
+  /**
+   * The state of the search from one end.
+   */
+  private static class Side {
+    private final byte[] moves;
+    private final int[] cost;
+    private final NodeHeap open = new NodeHeap();
+    private final int target;
+
+    private Side(NodeGrid grid, int origin, int target) {
+      this.moves = new byte[grid.size()];
+      this.cost = new int[grid.size()];
+      this.target = target;
+      Arrays.fill(cost, Integer.MAX_VALUE);
+      cost[origin] = 0;
+      moves[origin] = 1; //Any mark will do, the origin is never walked past
+      open.push(origin, AStarSearch.key(grid.distance(origin, target), 0));
+    }
+  }
+}
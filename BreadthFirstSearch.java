@@ -0,0 +1,82 @@
+import java.util.BitSet;
+
+/**
+ * Unweighted breadth first search, expanding nodes in order of their distance from the start.
+ */
+public class BreadthFirstSearch implements SearchStrategy {
+
+  @Override
+  public int[] search(NodeGrid grid, int start, int end, SolveMonitor monitor) {
+    byte[] moves = new byte[grid.size()];
+    int[] queue = new int[grid.size()]; //Every node is queued at most once
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = start;
+    moves[start] = 1; //Any mark will do, the start is never walked past
+
+    while (head < tail) {
+      int current = queue[head++];
+      monitor.expanded(head, tail - head);
+      if (current == end) {
+        System.out.println("Found Ending Node, expanded " + Integer.toString(head) + " nodes");
+        return grid.walkBack(moves, start, end);
+      }
+
+      for (int move = 0; move < 4; move++) {
+        int neighbor = grid.step(current, move);
+        if (neighbor >= 0 && moves[neighbor] == NodeGrid.UNREACHED) {
+          moves[neighbor] = (byte) (move + 1);
+          queue[tail++] = neighbor;
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Grows one breadth first tree from a start until it has reached every end, then walks each
+   * path back out of it, so many queries from one source cost a single search.
+   * @param grid The nodes to search.
+   * @param start The starting node.
+   * @param ends The ending nodes, repeats allowed.
+   * @return The path to each end in order, null for ends that cannot be reached.
+   */
+  public int[][] searchAll(NodeGrid grid, int start, int[] ends) {
+    byte[] moves = new byte[grid.size()];
+    BitSet targets = new BitSet(grid.size());
+    for (int end : ends) {
+      targets.set(end);
+    }
+    int remaining = targets.cardinality();
+
+    int[] queue = new int[grid.size()];
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = start;
+    moves[start] = 1; //Any mark will do, the start is never walked past
+
+    while (head < tail && remaining > 0) {
+      int current = queue[head++];
+      if (targets.get(current)) {
+        remaining--;
+      }
+
+      for (int move = 0; move < 4; move++) {
+        int neighbor = grid.step(current, move);
+        if (neighbor >= 0 && moves[neighbor] == NodeGrid.UNREACHED) {
+          moves[neighbor] = (byte) (move + 1);
+          queue[tail++] = neighbor;
+        }
+      }
+    }
+
+    System.out.println("Found " + Integer.toString(targets.cardinality() - remaining) + " ending nodes, expanded " + Integer.toString(head) + " nodes");
+    int[][] paths = new int[ends.length][];
+    for (int i = 0; i < ends.length; i++) {
+      paths[i] = moves[ends[i]] == NodeGrid.UNREACHED ? null : grid.walkBack(moves, start, ends[i]);
+    }
+
+    return paths;
+  }
+}
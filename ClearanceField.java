@@ -0,0 +1,160 @@
+import java.util.stream.IntStream;
+
+/**
+ * The chessboard distance from every pixel of a WallGrid to its nearest wall, with everything off
+ * the grid counting as wall. A square of side 2r + 1 centred on a pixel is free of walls exactly
+ * when the pixel's distance is over r, so whether a block of any size fits anywhere is answered
+ * with at most four lookups, and node grids of every pixelSize can be validated from one field.
+ * The distances also measure how far a path keeps from the walls.
+ *
+ * The transform is separable: a pass down the columns finds each pixel's distance to the nearest
+ * wall in its column, split into bands of columns, then a pass along each row takes the lower
+ * envelope of those, after Meijster, Roerdink and Hesselink, with rows split across the common
+ * pool. Both passes are linear in the number of pixels.
+ */
+public class ClearanceField {
+
+  private static final int COLUMN_BAND = 256; // Columns per task in the column pass
+
+  private final int width;
+  private final int height;
+  private final short[] distances; // Chessboard distance to the nearest wall, clamped to Short.MAX_VALUE
+
+  /**
+   * Transforms a grid.
+   * @param grid The binarized maze.
+   */
+  public ClearanceField(WallGrid grid) {
+    this.width = grid.getWidth();
+    this.height = grid.getHeight();
+    this.distances = new short[width * height];
+
+    IntStream.range(0, (width + COLUMN_BAND - 1) / COLUMN_BAND).parallel().forEach(band -> {
+      int from = band * COLUMN_BAND;
+      int to = Math.min(width, from + COLUMN_BAND);
+      for (int y = 0; y < height; y++) { //Down, from the wall above or the top edge
+        for (int x = from; x < to; x++) {
+          int above = y == 0 ? 0 : distances[(y - 1) * width + x];
+          distances[y * width + x] = grid.isWall(x, y) ? 0 : clamp(above + 1);
+        }
+      }
+      for (int y = height - 1; y >= 0; y--) { //Up, from the wall below or the bottom edge
+        for (int x = from; x < to; x++) {
+          int below = y == height - 1 ? 1 : distances[(y + 1) * width + x] + 1;
+          if (below < distances[y * width + x]) {
+            distances[y * width + x] = clamp(below);
+          }
+        }
+      }
+    });
+
+    IntStream.range(0, height).parallel().forEach(this::transformRow);
+  }
+
+  /**
+   * Replaces a row's column distances with chessboard distances, using the lower envelope of
+   * max(|x - i|, g(i)) over the row's columns i.
+   */
+  private void transformRow(int y) {
+    int base = y * width;
+    int[] g = new int[width];
+    for (int x = 0; x < width; x++) {
+      g[x] = distances[base + x];
+    }
+
+    int[] s = new int[width]; // Columns whose functions make up the envelope
+    int[] t = new int[width]; // Where each of them takes over
+    int q = 0;
+    for (int u = 1; u < width; u++) {
+      while (q >= 0 && envelope(g, t[q], s[q]) > envelope(g, t[q], u)) {
+        q--;
+      }
+      if (q < 0) {
+        q = 0;
+        s[0] = u;
+      } else {
+        int w = 1 + separation(g, s[q], u);
+        if (w < width) {
+          q++;
+          s[q] = u;
+          t[q] = w;
+        }
+      }
+    }
+
+    for (int u = width - 1; u >= 0; u--) {
+      int edge = Math.min(u + 1, width - u); //Off the grid to the left or right
+      distances[base + u] = clamp(Math.min(envelope(g, u, s[q]), edge));
+      if (u == t[q]) {
+        q--;
+      }
+    }
+  }
+
+  private static int envelope(int[] g, int x, int i) {
+    return Math.max(Math.abs(x - i), g[i]);
+  }
+
+  /**
+   * Finds the last column where the function of column i is no higher than that of column u > i.
+   */
+  private static int separation(int[] g, int i, int u) {
+    if (g[i] <= g[u]) {
+      return Math.max(i + g[u], (i + u) / 2);
+    }
+    return Math.min(u - g[i], (i + u) / 2);
+  }
+
+  private static short clamp(int distance) {
+    return (short) Math.min(distance, Short.MAX_VALUE);
+  }
+
+  /**
+   * Gets the chessboard distance from a pixel to the nearest wall.
+   * @param x The x-coordinate.
+   * @param y The y-coordinate.
+   * @return 0 on walls, otherwise the distance, where pixels on the edge of the grid are at 1.
+   */
+  public int getDistance(int x, int y) {
+    return distances[y * width + x];
+  }
+
+  /**
+   * Checks whether a size x size block is entirely open.
+   * @param x The left edge of the block.
+   * @param y The top edge of the block.
+   * @param size The side length of the block.
+   * @return True when every pixel in the block is open and on the grid.
+   */
+  public boolean fits(int x, int y, int size) {
+    if (x < 0 || y < 0 || x + size > width || y + size > height) {
+      return false;
+    }
+
+    int radius = (size - 1) / 2;
+    if (size % 2 == 1) {
+      return distances[(y + radius) * width + x + radius] > radius;
+    }
+
+    // An even block is the union of the four odd blocks one smaller at its corners
+    int centre = (y + radius) * width + x + radius;
+    return distances[centre] > radius && distances[centre + 1] > radius
+        && distances[centre + width] > radius && distances[centre + width + 1] > radius;
+  }
+
+  /**
+   * Gets the width of the field.
+   * @return The width in pixels.
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Gets the height of the field.
+   * @return The height in pixels.
+   */
+  public int getHeight() {
+    return height;
+  }
+}
@@ -0,0 +1,245 @@
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Labels the connected regions of a NodeGrid's open nodes, so two nodes in different regions can
+ * be told apart in O(1) before any search runs. Each row's open nodes are cut into runs a word at
+ * a time and runs that touch the row above are joined with union-find. Bands of rows are run
+ * concurrently on the common pool, each joining only its own runs, and the bands are then stitched
+ * together along their boundary rows.
+ */
+public class ComponentLabels {
+
+  private static final int MIN_BAND = 64; // Fewest rows worth handing to another thread
+
+  private final int[] labels; // Component of each node from 1, 0 for closed nodes
+  private final int[] sizes; // Nodes in each component, by label
+  private final int count;
+
+  /**
+   * Labels a grid.
+   * @param grid The validated nodes.
+   */
+  public ComponentLabels(NodeGrid grid) {
+    this(grid, SolveMonitor.NONE);
+  }
+
+  /**
+   * Labels a grid, checking a monitor every row so a cancelled solve stops here too.
+   * @param grid The validated nodes.
+   * @param monitor Checked for cancellation.
+   * @throws java.util.concurrent.CancellationException When the monitor stops the solve.
+   */
+  public ComponentLabels(NodeGrid grid, SolveMonitor monitor) {
+    int rows = grid.getRows();
+    int bandRows = Math.max(MIN_BAND, rows / (Runtime.getRuntime().availableProcessors() * 4));
+    int bandCount = (rows + bandRows - 1) / bandRows;
+    Band[] bands = new Band[bandCount];
+
+    inParallel(bandCount, monitor, b -> {
+      bands[b] = new Band(grid, b * bandRows, Math.min(rows, (b + 1) * bandRows), monitor);
+    });
+
+    int runCount = 0;
+    for (Band band : bands) {
+      band.offset = runCount;
+      runCount += band.runs;
+    }
+    int[] parent = new int[runCount];
+    for (int i = 0; i < runCount; i++) {
+      parent[i] = i;
+    }
+
+    inParallel(bandCount, monitor, b -> { // Bands only touch their own runs
+      Band band = bands[b];
+      for (int row = band.firstRow + 1; row < band.lastRow; row++) {
+        monitor.check();
+        joinRows(parent, band, row - 1, band, row);
+      }
+    });
+    for (int b = 1; b < bandCount; b++) {
+      joinRows(parent, bands[b - 1], bands[b].firstRow - 1, bands[b], bands[b].firstRow);
+    }
+
+    int[] runLabels = new int[runCount]; // Roots come before the runs below them, so one pass labels all
+    int next = 0;
+    for (int run = 0; run < runCount; run++) {
+      int root = find(parent, run);
+      runLabels[run] = root == run ? ++next : runLabels[root];
+    }
+    this.count = next;
+
+    this.labels = new int[grid.size()];
+    this.sizes = new int[count + 1];
+    int columns = grid.getColumns();
+    for (Band band : bands) {
+      for (int run = 0; run < band.runs; run++) {
+        sizes[runLabels[band.offset + run]] += band.ends[run] - band.starts[run];
+      }
+    }
+    inParallel(bandCount, monitor, b -> {
+      Band band = bands[b];
+      for (int row = band.firstRow; row < band.lastRow; row++) {
+        monitor.check();
+        for (int run = band.rowStarts[row - band.firstRow]; run < band.rowStarts[row - band.firstRow + 1]; run++) {
+          Arrays.fill(labels, row * columns + band.starts[run], row * columns + band.ends[run], runLabels[band.offset + run]);
+        }
+      }
+    });
+
+    System.out.println("Labelled Components: " + Integer.toString(count));
+  }
+
+  /**
+   * Gets the component a node belongs to.
+   * @param node The node index.
+   * @return The label, from 1, or 0 when the node is closed.
+   */
+  public int getLabel(int node) {
+    return labels[node];
+  }
+
+  /**
+   * Checks whether a path can join two nodes.
+   * @param a The first node.
+   * @param b The second node.
+   * @return True when both are open and in the same component.
+   */
+  public boolean connected(int a, int b) {
+    return labels[a] != 0 && labels[a] == labels[b];
+  }
+
+  /**
+   * Gets the number of nodes in a component.
+   * @param label The label.
+   * @return The number of nodes.
+   */
+  public int getSize(int label) {
+    return sizes[label];
+  }
+
+  /**
+   * Gets the number of components.
+   * @return The number of components.
+   */
+  public int getComponentCount() {
+    return count;
+  }
+
+  /**
+   * Runs a step for each band on the common pool. A cancellation thrown by a worker reaches here as
+   * a copy without its message, so the monitor is asked to throw it again.
+   */
+  private static void inParallel(int bandCount, SolveMonitor monitor, IntConsumer step) {
+    try {
+      IntStream.range(0, bandCount).parallel().forEach(step);
+    } catch (CancellationException ex) {
+      monitor.check();
+      throw ex;
+    }
+  }
+
+  /**
+   * Unions the runs of two neighbouring rows wherever they share a column.
+   */
+  private static void joinRows(int[] parent, Band upperBand, int upper, Band lowerBand, int lower) {
+    int a = upperBand.rowStarts[upper - upperBand.firstRow];
+    int aEnd = upperBand.rowStarts[upper - upperBand.firstRow + 1];
+    int b = lowerBand.rowStarts[lower - lowerBand.firstRow];
+    int bEnd = lowerBand.rowStarts[lower - lowerBand.firstRow + 1];
+
+    while (a < aEnd && b < bEnd) {
+      if (upperBand.starts[a] < lowerBand.ends[b] && lowerBand.starts[b] < upperBand.ends[a]) {
+        union(parent, upperBand.offset + a, lowerBand.offset + b);
+      }
+      if (upperBand.ends[a] < lowerBand.ends[b]) {
+        a++;
+      } else {
+        b++;
+      }
+    }
+  }
+
+  private static int find(int[] parent, int run) {
+    while (parent[run] != run) {
+      parent[run] = parent[parent[run]]; //Path halving
+      run = parent[run];
+    }
+    return run;
+  }
+
+  /**
+   * Joins two sets, keeping the smaller root so every root is its component's first run.
+   */
+  private static void union(int[] parent, int a, int b) {
+    int rootA = find(parent, a);
+    int rootB = find(parent, b);
+    if (rootA < rootB) {
+      parent[rootB] = rootA;
+    } else if (rootB < rootA) {
+      parent[rootA] = rootB;
+    }
+  }
+
+  /**
+   * The runs of open nodes in a band of rows, [starts, ends) by column.
+   */
+  private static class Band {
+    private final int firstRow;
+    private final int lastRow;
+    private final int[] rowStarts; // Index of each row's first run, plus one past the end
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int runs;
+    private int offset; // Index of the first run among all bands
+
+    private Band(NodeGrid grid, int firstRow, int lastRow, SolveMonitor monitor) {
+      this.firstRow = firstRow;
+      this.lastRow = lastRow;
+      this.rowStarts = new int[lastRow - firstRow + 1];
+
+      long[] words = grid.words();
+      int stride = grid.getStride();
+      int columns = grid.getColumns();
+      for (int row = firstRow; row < lastRow; row++) {
+        monitor.check();
+        rowStarts[row - firstRow] = runs;
+        int base = row * stride;
+        int column = 0;
+        while (column < columns) {
+          int start = scan(words, base, stride, column, false);
+          if (start >= columns) {
+            break;
+          }
+          column = Math.min(columns, scan(words, base, stride, start, true));
+          if (runs == starts.length) {
+            starts = Arrays.copyOf(starts, runs * 2);
+            ends = Arrays.copyOf(ends, runs * 2);
+          }
+          starts[runs] = start;
+          ends[runs] = column;
+          runs++;
+        }
+      }
+      rowStarts[lastRow - firstRow] = runs;
+    }
+
+    /**
+     * Finds the first column at or after the given one that is open, or closed when looking for
+     * the end of a run. Returns stride * 64 when there is none.
+     */
+    private static int scan(long[] words, int base, int stride, int column, boolean closed) {
+      int word = column >>> 6;
+      long bits = (closed ? ~words[base + word] : words[base + word]) & (-1L << column);
+      while (bits == 0) {
+        if (++word == stride) {
+          return stride << 6;
+        }
+        bits = closed ? ~words[base + word] : words[base + word];
+      }
+      return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+  }
+}
@@ -0,0 +1,173 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Prunes a NodeGrid by dead-end filling: open nodes with at most one open neighbour are closed,
+ * over and over, until none are left apart from the start and end. What remains is every node that
+ * lies on a loop or between the start and end, which for a perfect maze is the solution corridor
+ * alone, so the search that follows has far less to explore.
+ *
+ * Rows are filled a word at a time. A node has two or more open neighbours when any pair of its
+ * left, right, upper and lower neighbour bits is set, so one word of dead ends costs a handful of
+ * shifts and ands. A row is refilled until it stops changing, which clears horizontal chains, and
+ * marks the rows beside it to be revisited, which carries vertical chains on in the next sweep.
+ * Sweeps alternate direction and split the rows into bands across a ForkJoinPool, running the even
+ * bands and then the odd ones so no band writes a row its neighbours are reading. The pool is the
+ * filler's own, and close() shuts it down.
+ */
+public class DeadEndFilling implements AutoCloseable {
+
+  private static final int MIN_BAND = 16; // Fewest rows worth handing to another thread
+
+  private final ForkJoinPool pool; // Null when serial
+  private final int parallelism;
+
+  /**
+   * Creates a filler running on its own pool.
+   * @param parallelism The number of threads.
+   */
+  public DeadEndFilling(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1, was " + parallelism);
+    }
+
+    this.parallelism = parallelism;
+    this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+  }
+
+  /**
+   * Fills the dead ends of a grid.
+   * @param grid The nodes to prune, which are left as they are.
+   * @param start The starting node, never filled.
+   * @param end The ending node, never filled.
+   * @return A grid with the same layout where the filled nodes are closed.
+   */
+  public NodeGrid fill(NodeGrid grid, int start, int end) {
+    long[] open = grid.words().clone();
+    int rows = grid.getRows();
+    boolean[] dirty = new boolean[rows];
+    Arrays.fill(dirty, true);
+
+    int bandRows = Math.max(MIN_BAND, rows / (parallelism * 4));
+    int bands = (rows + bandRows - 1) / bandRows;
+    boolean downwards = true;
+    int sweeps = 0;
+
+    while (anyDirty(dirty)) {
+      boolean down = downwards;
+      for (int parity = 0; parity < 2; parity++) {
+        int first = parity;
+        forEachBand((bands - first + 1) / 2, (from, to) -> {
+          for (int band = first + 2 * from; band < first + 2 * to; band += 2) {
+            sweep(grid, open, dirty, band * bandRows, Math.min(rows, (band + 1) * bandRows), down, start, end);
+          }
+        });
+      }
+      downwards = !downwards;
+      sweeps++;
+    }
+
+    NodeGrid filled = grid.restrict(open);
+    System.out.println("Filled " + Integer.toString(grid.countOpen() - filled.countOpen()) + " dead-end nodes in " + Integer.toString(sweeps) + " sweeps");
+    return filled;
+  }
+
+  /**
+   * Refills the dirty rows of a band.
+   */
+  private static void sweep(NodeGrid grid, long[] open, boolean[] dirty, int from, int to, boolean down, int start, int end) {
+    for (int i = 0; i < to - from; i++) {
+      int row = down ? from + i : to - 1 - i;
+      if (!dirty[row]) {
+        continue;
+      }
+
+      dirty[row] = false;
+      if (fillRow(grid, open, row, start, end)) {
+        if (row > 0) {
+          dirty[row - 1] = true;
+        }
+        if (row + 1 < grid.getRows()) {
+          dirty[row + 1] = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes the dead ends of one row until there are none left in it.
+   * @return True when anything was closed.
+   */
+  private static boolean fillRow(NodeGrid grid, long[] open, int row, int start, int end) {
+    int stride = grid.getStride();
+    int columns = grid.getColumns();
+    int base = row * stride;
+    int above = row > 0 ? base - stride : -1;
+    int below = row + 1 < grid.getRows() ? base + stride : -1;
+    boolean changed = false;
+
+    boolean again = true;
+    while (again) {
+      again = false;
+      for (int word = 0; word < stride; word++) {
+        long nodes = open[base + word];
+        if (nodes == 0) {
+          continue;
+        }
+
+        long left = (nodes << 1) | (word > 0 ? open[base + word - 1] >>> 63 : 0);
+        long right = (nodes >>> 1) | (word + 1 < stride ? open[base + word + 1] << 63 : 0);
+        long up = above >= 0 ? open[above + word] : 0;
+        long down = below >= 0 ? open[below + word] : 0;
+        long twoOrMore = (left & right) | ((left | right) & (up | down)) | (up & down);
+
+        long dead = nodes & ~twoOrMore;
+        dead &= ~keep(start, columns, row, word) & ~keep(end, columns, row, word);
+        if (dead != 0) {
+          open[base + word] = nodes & ~dead;
+          again = true;
+          changed = true;
+        }
+      }
+    }
+
+    return changed;
+  }
+
+  /**
+   * Gets the bit a node occupies in a word of a row, or 0 when it lies elsewhere.
+   */
+  private static long keep(int node, int columns, int row, int word) {
+    return node / columns == row && (node % columns) >>> 6 == word ? 1L << (node % columns) : 0;
+  }
+
+  private static boolean anyDirty(boolean[] dirty) {
+    for (boolean row : dirty) {
+      if (row) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Runs work over bands 0 - count, split across the pool.
+   */
+  private void forEachBand(int count, GreyPlaneEngine.RowRange work) {
+    if (pool == null || count < 2) {
+      work.run(0, count);
+    } else {
+      pool.invoke(new GreyPlaneEngine.BandTask(work, 0, count, Math.max(1, count / (parallelism * 2))));
+    }
+  }
+
+  /**
+   * Shuts down the filler's pool once any running fill finishes. The filler cannot be used after.
+   */
+  @Override
+  public void close() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,163 @@
+import java.awt.Graphics;
+import java.awt.image.*;
+import java.util.Arrays;
+
+/**
+ * Single-pass version of the edge-detection pipeline. Instead of building a new image for every
+ * stage, source rows are greyscaled in small strips and streamed through a ring of horizontally
+ * blurred rows, a ring of fully blurred rows and the edge test, so only the output image is ever
+ * held at full size.
+ *
+ * The two 5x5 blurs and the 3x3 blur are collapsed into one separable kernel. The 3x3 kernel is
+ * already the binomial [1 2 1] / 4 in each direction and the 5x5 kernel is closest to the binomial
+ * [1 4 6 4 1] / 16, so the stack is the binomial of order 10 applied once to the rows and once to
+ * the columns. Results are close to, but not bit-identical with, ImageProcessing.processImage.
+ */
+public class FusedEdgePipeline {
+
+  // Binomial kernel {1, 10, 45, 120, 210, 252, 210, 120, 45, 10, 1}, summing to 2^10. It is written
+  // out by hand in blurRow and blurColumn.
+  private static final int TAPS = 11;
+  private static final int SHIFT = 20; // Row and column passes each scale by 2^10
+  private static final int STRIP = 16; // Source rows greyscaled at a time
+
+  private BufferedImage strip; // Greyscale strip of the source rows being streamed
+  private int[][] rowRing = new int[TAPS][0]; // Horizontally blurred rows
+  private int[][] blurRing = new int[3][0]; // Fully blurred rows feeding the edge test
+  private int[] greyRow = new int[0]; // sRGB grey values of the source row being blurred
+
+  /**
+   * Runs greyscale, blur and edge detection in one streaming pass.
+   * @param img The image to process.
+   * @param threshold The minimum gradient magnitude of an edge.
+   * @return The edge-detected image, white where there is no edge.
+   */
+  public BufferedImage process(BufferedImage img, int threshold) {
+    int w = img.getWidth();
+    int h = img.getHeight();
+    int outW = w - (TAPS - 1);
+    int outH = h - (TAPS - 1);
+
+    if (outW < 3 || outH < 3) {
+      throw new IllegalArgumentException("Image is too small for the fused pipeline.");
+    }
+
+    BufferedImage edgeImage = new BufferedImage(outW, outH, BufferedImage.TYPE_BYTE_GRAY);
+    byte[] out = GreyPlaneEngine.samples(edgeImage);
+    long limit = threshold > 0 ? (long) threshold * threshold : 0;
+    prepare(w, outW);
+
+    for (int y0 = 0; y0 < h; y0 += STRIP) {
+      int rows = Math.min(STRIP, h - y0);
+      byte[] grey = readStrip(img, y0);
+
+      for (int r = 0; r < rows; r++) {
+        int y = y0 + r;
+        blurRow(grey, r * w, rowRing[y % TAPS], outW);
+
+        int b = y - (TAPS - 1); // Blurred row completed by this source row
+        if (b >= 0) {
+          blurColumn(y, blurRing[b % 3], outW);
+        }
+        if (b >= 2) {
+          edgeRow(b - 1, outW, limit, out);
+        }
+      }
+    }
+
+    return edgeImage;
+  }
+
+  /**
+   * Sizes the strip and ring buffers, reusing them when they are already large enough.
+   */
+  private void prepare(int w, int outW) {
+    if (strip == null || strip.getWidth() != w) {
+      strip = new BufferedImage(w, STRIP, BufferedImage.TYPE_BYTE_GRAY);
+    }
+
+    if (rowRing[0].length < outW) {
+      rowRing = new int[TAPS][outW];
+      blurRing = new int[3][outW];
+    }
+
+    if (greyRow.length < w) {
+      greyRow = new int[w];
+    }
+  }
+
+  /**
+   * Greyscales STRIP source rows starting at y0, the same way ImageProcessing.greyScale does.
+   * @return The strip's samples, row-major with a stride of the image width.
+   */
+  private byte[] readStrip(BufferedImage img, int y0) {
+    Arrays.fill(GreyPlaneEngine.samples(strip), (byte) 0); // greyScale draws onto a black image
+    Graphics converter = strip.getGraphics();
+    converter.drawImage(img, 0, -y0, null);
+    converter.dispose();
+    return GreyPlaneEngine.samples(strip);
+  }
+
+  /**
+   * Applies the kernel along one greyscale row.
+   */
+  private void blurRow(byte[] grey, int offset, int[] dest, int outW) {
+    int[] row = greyRow;
+    for (int x = 0; x < outW + TAPS - 1; x++) {
+      row[x] = GreyPlaneEngine.toSrgb(grey[offset + x] & 0xFF);
+    }
+
+    for (int x = 0; x < outW; x++) { // Symmetric kernel, so pair the taps around the centre
+      dest[x] = (row[x] + row[x + 10])
+          + 10 * (row[x + 1] + row[x + 9])
+          + 45 * (row[x + 2] + row[x + 8])
+          + 120 * (row[x + 3] + row[x + 7])
+          + 210 * (row[x + 4] + row[x + 6])
+          + 252 * row[x + 5];
+    }
+  }
+
+  /**
+   * Applies the kernel down the columns of the row ring ending at source row y.
+   */
+  private void blurColumn(int y, int[] dest, int outW) {
+    int first = y - (TAPS - 1);
+    int[] r0 = rowRing[first % TAPS];
+    int[] r1 = rowRing[(first + 1) % TAPS];
+    int[] r2 = rowRing[(first + 2) % TAPS];
+    int[] r3 = rowRing[(first + 3) % TAPS];
+    int[] r4 = rowRing[(first + 4) % TAPS];
+    int[] r5 = rowRing[(first + 5) % TAPS];
+    int[] r6 = rowRing[(first + 6) % TAPS];
+    int[] r7 = rowRing[(first + 7) % TAPS];
+    int[] r8 = rowRing[(first + 8) % TAPS];
+    int[] r9 = rowRing[(first + 9) % TAPS];
+    int[] r10 = rowRing[(first + 10) % TAPS];
+
+    for (int x = 0; x < outW; x++) {
+      int sum = (r0[x] + r10[x])
+          + 10 * (r1[x] + r9[x])
+          + 45 * (r2[x] + r8[x])
+          + 120 * (r3[x] + r7[x])
+          + 210 * (r4[x] + r6[x])
+          + 252 * r5[x];
+      dest[x] = (sum + (1 << (SHIFT - 1))) >> SHIFT;
+    }
+  }
+
+  /**
+   * Runs the edge test on blurred row e, using the rows above and below it from the ring.
+   */
+  private void edgeRow(int e, int outW, long limit, byte[] out) {
+    int[] up = blurRing[(e - 1) % 3];
+    int[] mid = blurRing[e % 3];
+    int[] down = blurRing[(e + 1) % 3];
+    int o = e * outW;
+
+    for (int x = 1; x < outW - 1; x++) {
+      int horiz = ((up[x - 1] + up[x] + up[x + 1]) - (down[x - 1] + down[x] + down[x + 1])) / 6;
+      int vert = ((up[x - 1] + mid[x - 1] + down[x - 1]) - (up[x + 1] + mid[x + 1] + down[x + 1])) / 6;
+      out[o + x] = (long) horiz * horiz + (long) vert * vert < limit ? GreyPlaneEngine.WHITE : GreyPlaneEngine.CLEAR;
+    }
+  }
+}
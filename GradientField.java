@@ -0,0 +1,59 @@
+import java.awt.image.*;
+
+/**
+ * The squared gradient magnitudes of a blurred image, kept so that the edge image for a new
+ * threshold is a single pass over the field instead of a rerun of the whole pipeline.
+ */
+public class GradientField {
+
+  private final GreyPlaneEngine engine;
+  private final int width;
+  private final int height;
+  private final int[] magnitudes;
+
+  /**
+   * Measures the gradient of a blurred image.
+   * @param engine The engine used to measure and threshold the field.
+   * @param img The blurred image, as edgeDetect would receive it.
+   */
+  public GradientField(GreyPlaneEngine engine, BufferedImage img) {
+    this.engine = engine;
+    this.width = img.getWidth();
+    this.height = img.getHeight();
+    this.magnitudes = engine.gradient(img, null);
+  }
+
+  /**
+   * Builds the edge image for a threshold.
+   * @param threshold The minimum gradient magnitude of an edge.
+   * @return The same image edgeDetect would return for this threshold.
+   */
+  public BufferedImage threshold(int threshold) {
+    return engine.threshold(magnitudes, width, height, threshold);
+  }
+
+  /**
+   * Packs the open pixels of the edge image for a threshold into a wall grid.
+   * @param threshold The minimum gradient magnitude of an edge.
+   * @return The grid, open where threshold would give white.
+   */
+  public WallGrid grid(int threshold) {
+    return engine.thresholdGrid(magnitudes, width, height, threshold);
+  }
+
+  /**
+   * Gets the width of the field.
+   * @return The width.
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Gets the height of the field.
+   * @return The height.
+   */
+  public int getHeight() {
+    return height;
+  }
+}
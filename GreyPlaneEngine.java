@@ -0,0 +1,475 @@
+import java.awt.Color;
+import java.awt.image.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the ImageProcessing filters on the raw sample arrays behind the images instead of
+ * going through getRGB / setRGB for every tap. Pixel values are handled in the same sRGB
+ * domain that getRGB exposes, so every filter produces exactly what the per-pixel versions did.
+ * Scratch planes are kept between calls, so an instance is not safe to share between threads.
+ *
+ * With a parallelism above 1 every pass is split into bands of output rows run on a ForkJoinPool.
+ * A band reads its own rows plus a halo of the kernel radius above and below (1 row for edgeDetect,
+ * 2 for gaussianBlur5) from the shared source plane and writes only its own rows, so the result is
+ * the same as the serial pass.
+ */
+public class GreyPlaneEngine {
+
+  // TYPE_BYTE_GRAY stores linear grey, getRGB / setRGB convert to and from sRGB.
+  // These tables capture that conversion once so the filters never touch the colour model.
+  private static final int[] TO_SRGB = new int[256]; // sample -> getRGB(x, y) & 0xFF
+  private static final byte[] FROM_SRGB = new byte[256]; // grey level -> sample written by setRGB
+  static final byte WHITE = sampleFor(Color.WHITE.getRGB());
+  static final byte BLACK = sampleFor(Color.BLACK.getRGB());
+  static final byte CLEAR = sampleFor(0);
+  private static final byte EDGE_SEED = sampleFor((255 << 24) | 255);
+
+  static {
+    BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+    WritableRaster raster = probe.getRaster();
+
+    for (int i = 0; i < 256; i++) {
+      raster.setSample(0, 0, 0, i);
+      TO_SRGB[i] = probe.getRGB(0, 0) & 0xFF;
+      probe.setRGB(0, 0, (255 << 24) | (i << 16) | (i << 8) | i);
+      FROM_SRGB[i] = (byte) raster.getSample(0, 0, 0);
+    }
+  }
+
+  private static final int MIN_BAND = 32; // Fewest rows worth handing to another thread
+  private static final KernelBackend VECTOR = vectorKernels(); // SIMD kernels, null when unavailable
+
+  /**
+   * Work over a range of rows.
+   */
+  interface RowRange {
+    void run(int from, int to);
+  }
+
+  private int[] plane = new int[0]; // sRGB grey values of the image currently being filtered
+  private int[] magnitudes; // squared gradient magnitudes used by edgeDetect
+  private long[] rowSums = new long[0]; // per row sums used by contrastDetect
+  private ForkJoinPool pool; // Runs bands when parallelism is above 1, null when serial
+  private int parallelism = 1;
+  private KernelBackend backend = VECTOR != null ? VECTOR : new ScalarKernels();
+
+  /**
+   * Sets how many threads the filters split their rows across.
+   * @param parallelism The number of threads, 1 to run serially.
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1.");
+    }
+
+    if (pool != null) {
+      pool.shutdown();
+    }
+
+    this.parallelism = parallelism;
+    pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+  }
+
+  /**
+   * Sets whether the filters use the SIMD backend. It is only available when VectorKernels has been
+   * compiled and the jdk.incubator.vector module is present; otherwise the scalar backend stays.
+   * @param vectorized True to use SIMD kernels when available.
+   * @return Whether the SIMD backend is now in use.
+   */
+  public boolean setVectorized(boolean vectorized) {
+    backend = vectorized && VECTOR != null ? VECTOR : new ScalarKernels();
+    return backend == VECTOR;
+  }
+
+  /**
+   * Loads the SIMD backend if it can run here.
+   * @return The backend, or null when the class or the vector module is missing.
+   */
+  private static KernelBackend vectorKernels() {
+    try {
+      return (KernelBackend) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Gets how many threads the filters split their rows across.
+   * @return The parallelism, 1 when serial.
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Applies the 3x3 Gaussian blur, shrinking the image by one pixel on every side.
+   * @param img The image to blur.
+   * @return The blurred image.
+   */
+  public BufferedImage gaussianBlur3(BufferedImage img) {
+    int w = img.getWidth();
+    int[] src = load(img);
+    BufferedImage blurredImage = new BufferedImage(w - 2, img.getHeight() - 2, BufferedImage.TYPE_BYTE_GRAY);
+    int outW = blurredImage.getWidth();
+    byte[] out = samples(blurredImage);
+
+    forEachBand(blurredImage.getHeight(), (from, to) -> {
+      int[] row = new int[outW];
+      for (int y = from; y < to; y++) {
+        backend.blur3Row(src, y * w, w, row, outW);
+        storeRow(row, out, y * outW, outW);
+      }
+    });
+
+    return blurredImage;
+  }
+
+  /**
+   * Applies the 5x5 Gaussian blur, shrinking the image by two pixels on every side.
+   * @param img The image to blur.
+   * @return The blurred image.
+   */
+  public BufferedImage gaussianBlur5(BufferedImage img) {
+    int w = img.getWidth();
+    int[] src = load(img);
+    BufferedImage blurredImage = new BufferedImage(w - 4, img.getHeight() - 4, BufferedImage.TYPE_BYTE_GRAY);
+    int outW = blurredImage.getWidth();
+    byte[] out = samples(blurredImage);
+
+    forEachBand(blurredImage.getHeight(), (from, to) -> {
+      int[] row = new int[outW];
+      for (int y = from; y < to; y++) {
+        backend.blur5Row(src, y * w, w, row, outW);
+        storeRow(row, out, y * outW, outW);
+      }
+    });
+
+    return blurredImage;
+  }
+
+  /**
+   * Marks pixels whose gradient magnitude reaches the threshold as edges (black).
+   * @param img The image to detect edges in.
+   * @param threshold The minimum gradient magnitude of an edge.
+   * @return The edge-detected image.
+   */
+  public BufferedImage edgeDetect(BufferedImage img, int threshold) {
+    magnitudes = gradient(img, magnitudes);
+    return threshold(magnitudes, img.getWidth(), img.getHeight(), threshold);
+  }
+
+  /**
+   * Computes the squared gradient magnitude of every interior pixel, the part of edgeDetect that
+   * does not depend on the threshold.
+   * @param img The image to measure.
+   * @param field An array to reuse for the result, or null.
+   * @return The squared magnitudes, row-major with a stride of the image width.
+   */
+  public int[] gradient(BufferedImage img, int[] field) {
+    int w = img.getWidth();
+    int h = img.getHeight();
+    int[] src = load(img);
+    int[] dest = field != null && field.length >= w * h ? field : new int[w * h];
+
+    forEachBand(h - 2, (from, to) -> {
+      for (int y = from + 1; y < to + 1; y++) {
+        backend.gradientRow(src, y * w, w, dest);
+      }
+    });
+
+    return dest;
+  }
+
+  /**
+   * Turns squared gradient magnitudes into the edge image edgeDetect produces for a threshold.
+   * @param field The squared magnitudes from gradient.
+   * @param w The width of the image.
+   * @param h The height of the image.
+   * @param threshold The minimum gradient magnitude of an edge.
+   * @return The edge-detected image.
+   */
+  public BufferedImage threshold(int[] field, int w, int h, int threshold) {
+    BufferedImage edgeImage = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+    byte[] out = samples(edgeImage);
+    // (int) sqrt(m) < threshold is the same test as m < threshold^2 for whole thresholds
+    long limit = threshold > 0 ? (long) threshold * threshold : 0;
+
+    // The original loop walks column by column and carries its pixel value between iterations:
+    // the first non-edge pixel after an edge is written as 0xFF0000FF (dark), the rest as white.
+    // The pixel before (x, y) in that walk is (x, y - 1), or the bottom of the previous column
+    // for the top row, so every row can be written independently.
+    int bottom = (h - 2) * w;
+    forEachBand(h - 2, (from, to) -> {
+      for (int y = from + 1; y < to + 1; y++) {
+        int mid = y * w;
+        for (int x = 1; x < w - 1; x++) {
+          int i = mid + x;
+          if (field[i] >= limit) {
+            out[i] = CLEAR;
+          } else {
+            boolean afterEdge = y > 1 ? field[i - w] >= limit : x == 1 || field[bottom + x - 1] >= limit;
+            out[i] = afterEdge ? EDGE_SEED : WHITE;
+          }
+        }
+      }
+    });
+
+    return edgeImage;
+  }
+
+  /**
+   * Packs the open pixels threshold would produce straight into a wall grid. Pixels threshold
+   * writes white are open; edges, the dark first pixel after an edge and the border are wall.
+   * @param field The squared magnitudes from gradient.
+   * @param w The width of the image.
+   * @param h The height of the image.
+   * @param threshold The minimum gradient magnitude of an edge.
+   * @return The wall grid.
+   */
+  public WallGrid thresholdGrid(int[] field, int w, int h, int threshold) {
+    WallGrid grid = new WallGrid(w, h);
+    long limit = threshold > 0 ? (long) threshold * threshold : 0;
+    int bottom = (h - 2) * w;
+
+    forEachBand(h - 2, (from, to) -> { // Every row has its own words, so bands never share one
+      for (int y = from + 1; y < to + 1; y++) {
+        int mid = y * w;
+        for (int x = 1; x < w - 1; x++) {
+          int i = mid + x;
+          if (field[i] < limit) {
+            boolean afterEdge = y > 1 ? field[i - w] >= limit : x == 1 || field[bottom + x - 1] >= limit;
+            if (!afterEdge) {
+              grid.setOpen(x, y);
+            }
+          }
+        }
+      }
+    });
+
+    return grid;
+  }
+
+  /**
+   * Binarizes an image against its mean grey value.
+   * @param img The greyscale image to binarize.
+   * @return White where the pixel is brighter than the mean, black elsewhere.
+   */
+  public BufferedImage contrastDetect(BufferedImage img) {
+    int w = img.getWidth();
+    int h = img.getHeight();
+    int[] src = load(img);
+    BufferedImage processedImage = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+    byte[] out = samples(processedImage);
+
+    long averagePixel = mean(src, w, h);
+
+    forEachBand(h, (from, to) -> {
+      for (int i = from * w; i < to * w; i++) {
+        out[i] = src[i] > averagePixel ? WHITE : BLACK;
+      }
+    });
+
+    return processedImage;
+  }
+
+  /**
+   * Packs the pixels contrastDetect would make white straight into a wall grid.
+   * @param img The greyscale image to binarize.
+   * @return The wall grid, open where the pixel is brighter than the mean.
+   */
+  public WallGrid contrastGrid(BufferedImage img) {
+    int w = img.getWidth();
+    int h = img.getHeight();
+    int[] src = load(img);
+    WallGrid grid = new WallGrid(w, h);
+    long averagePixel = mean(src, w, h);
+
+    forEachBand(h, (from, to) -> {
+      for (int y = from; y < to; y++) {
+        for (int x = 0; x < w; x++) {
+          if (src[y * w + x] > averagePixel) {
+            grid.setOpen(x, y);
+          }
+        }
+      }
+    });
+
+    return grid;
+  }
+
+  /**
+   * Finds the mean of a plane, truncated to a whole grey level.
+   */
+  private long mean(int[] src, int w, int h) {
+    if (rowSums.length < h) {
+      rowSums = new long[h];
+    }
+
+    long[] sums = rowSums;
+    forEachBand(h, (from, to) -> {
+      for (int y = from; y < to; y++) {
+        long sum = 0;
+        for (int i = y * w; i < (y + 1) * w; i++) {
+          sum += src[i];
+        }
+        sums[y] = sum;
+      }
+    });
+
+    long sum = 0;
+    for (int y = 0; y < h; y++) {
+      sum += sums[y];
+    }
+
+    return sum / ((long) w * h);
+  }
+
+  /**
+   * Reads the image into the scratch plane as the values getRGB(x, y) & 0xFF would return.
+   * @param img The image to read.
+   * @return The scratch plane, row-major with a stride of the image width.
+   */
+  int[] load(BufferedImage img) {
+    int w = img.getWidth();
+    int h = img.getHeight();
+
+    if (plane.length < w * h) {
+      plane = new int[w * h];
+    }
+
+    int[] dest = plane;
+    WritableRaster raster = img.getRaster();
+    DataBuffer buffer = raster.getDataBuffer();
+    int type = img.getType();
+
+    if (type == BufferedImage.TYPE_BYTE_GRAY && raster.getSampleModel() instanceof ComponentSampleModel sm
+        && sm.getPixelStride() == 1) {
+      byte[] data = ((DataBufferByte) buffer).getData();
+      int stride = sm.getScanlineStride();
+      int base = sm.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY()) + buffer.getOffset();
+      forEachBand(h, (from, to) -> {
+        for (int y = from; y < to; y++) {
+          int row = base + y * stride;
+          int o = y * w;
+          for (int x = 0; x < w; x++) {
+            dest[o + x] = TO_SRGB[data[row + x] & 0xFF];
+          }
+        }
+      });
+    } else if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+        && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sm) {
+      int[] data = ((DataBufferInt) buffer).getData();
+      int stride = sm.getScanlineStride();
+      int base = sm.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY()) + buffer.getOffset();
+      forEachBand(h, (from, to) -> {
+        for (int y = from; y < to; y++) {
+          int row = base + y * stride;
+          int o = y * w;
+          for (int x = 0; x < w; x++) {
+            dest[o + x] = data[row + x] & 0xFF; // blue channel, as getRGB(x, y) & 0xFF
+          }
+        }
+      });
+    } else {
+      forEachBand(h, (from, to) -> {
+        img.getRGB(0, from, w, to - from, dest, from * w, w);
+        for (int i = from * w; i < to * w; i++) {
+          dest[i] &= 0xFF;
+        }
+      });
+    }
+
+    return dest;
+  }
+
+  /**
+   * Converts a row of blurred grey levels to the samples setRGB would have stored.
+   */
+  private static void storeRow(int[] row, byte[] out, int offset, int outW) {
+    for (int x = 0; x < outW; x++) {
+      out[offset + x] = FROM_SRGB[row[x]];
+    }
+  }
+
+  /**
+   * Runs work over rows 0 - rows, split into bands across the pool when running in parallel.
+   * @param rows The number of rows.
+   * @param work The work for one band of rows.
+   */
+  void forEachBand(int rows, RowRange work) {
+    if (pool == null || rows < 2 * MIN_BAND) {
+      work.run(0, rows);
+    } else {
+      int grain = Math.max(MIN_BAND, rows / (parallelism * 4)); // A few bands per thread to even out load
+      pool.invoke(new BandTask(work, 0, rows, grain));
+    }
+  }
+
+  /**
+   * Splits a range of rows in half until it is no larger than the grain.
+   */
+  static class BandTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final RowRange work;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    BandTask(RowRange work, int from, int to, int grain) {
+      this.work = work;
+      this.from = from;
+      this.to = to;
+      this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= grain) {
+        work.run(from, to);
+      } else {
+        int middle = (from + to) >>> 1;
+        invokeAll(new BandTask(work, from, middle, grain), new BandTask(work, middle, to, grain));
+      }
+    }
+  }
+
+  /**
+   * Gets the sample array of a freshly created TYPE_BYTE_GRAY image.
+   * @param img The image, which must not be a sub-image.
+   * @return The samples, row-major with a stride of the image width.
+   */
+  static byte[] samples(BufferedImage img) {
+    return ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+  }
+
+  /**
+   * Gets the grey sample that setRGB stores for a colour.
+   * @param argb The colour.
+   * @return The stored sample.
+   */
+  static byte sampleFor(int argb) {
+    BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+    probe.setRGB(0, 0, argb);
+    return (byte) probe.getRaster().getSample(0, 0, 0);
+  }
+
+  /**
+   * Converts an sRGB grey level to the sample setRGB would store for it.
+   * @param grey The grey level, 0 - 255.
+   * @return The stored sample.
+   */
+  static byte fromSrgb(int grey) {
+    return FROM_SRGB[grey];
+  }
+
+  /**
+   * Converts a stored grey sample to the level getRGB reports for it.
+   * @param sample The stored sample, 0 - 255.
+   * @return The sRGB grey level.
+   */
+  static int toSrgb(int sample) {
+    return TO_SRGB[sample];
+  }
+}
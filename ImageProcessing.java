@@ -3,62 +3,176 @@ import java.awt.image.*;
 
 public class ImageProcessing {
 
+  private final GreyPlaneEngine engine = new GreyPlaneEngine(); // Filters run on raw sample arrays
+  private final FusedEdgePipeline fusedPipeline = new FusedEdgePipeline();
+  private boolean fused = false; // Whether processImage streams through the fused pipeline
+  private int maxSide = 900; // Longest side images are shrunk to, 0 for no limit
+  private BufferedImage thresholdSource; // Image the cached threshold tables were built from
+  private IntegralThreshold thresholdTables;
+  private BufferedImage gradientSource; // Image the cached gradient field was built from
+  private GradientField gradient;
+  private BufferedImage pyramidSource; // Image the cached pyramid was built from
+  private ImagePyramid pyramid;
+
+  /**
+   * Sets whether processImage runs the fused single-pass pipeline instead of the separate stages.
+   * @param fused True to use the fused pipeline.
+   */
+  public void setFused(boolean fused) {
+    this.fused = fused;
+  }
+
+  /**
+   * Sets how many threads the filters split each image across. The output does not depend on it.
+   * @param parallelism The number of threads, 1 to run serially.
+   */
+  public void setParallelism(int parallelism) {
+    engine.setParallelism(parallelism);
+  }
+
   public BufferedImage processImage(BufferedImage img, int edgeDetectThreshold) {
+    if (fused) {
+      return processImageFused(img, edgeDetectThreshold);
+    }
+
+    return gradientField(img).threshold(edgeDetectThreshold);
+  }
+
+  /**
+   * Gets the gradient field of an image's blurred greyscale, running the blur stages only when the
+   * image changes. Thresholding the field gives processImage's result for any threshold.
+   * @param img The image.
+   * @return The gradient field for the image.
+   */
+  public GradientField gradientField(BufferedImage img) {
+    if (img == gradientSource) {
+      return gradient;
+    }
+
     BufferedImage processedImage = img;
-    processedImage = greyScale(processedImage);
-    processedImage = gaussianBlur5(gaussianBlur5(processedImage));
 
-    if (img.getWidth() > 900 || img.getHeight() > 900) {
-      processedImage = resize(processedImage, 900);   
+    if (exceedsMaxSide(img)) { // Shrink first so the blurs run at the working size
+      processedImage = pyramid(img).fit(maxSide);
     }
 
+    processedImage = greyScale(processedImage);
+    processedImage = gaussianBlur5(gaussianBlur5(processedImage));
     processedImage = gaussianBlur3(processedImage);
-    processedImage = edgeDetect(processedImage, edgeDetectThreshold);
+    gradient = new GradientField(engine, processedImage);
+    gradientSource = img;
+
+    System.out.println("Processed Edge Detection");
+    return gradient;
+  }
 
+  /**
+   * Runs the edge-detection pipeline as one streaming pass with the blurs collapsed into a single
+   * separable kernel. Images over the size limit are shrunk first rather than between the blurs.
+   * @param img The image to process.
+   * @param edgeDetectThreshold The minimum gradient magnitude of an edge.
+   * @return The edge-detected image.
+   */
+  public BufferedImage processImageFused(BufferedImage img, int edgeDetectThreshold) {
+    BufferedImage source = img;
+
+    if (exceedsMaxSide(img)) {
+      source = pyramid(img).fit(maxSide);
+    }
+
+    BufferedImage processedImage = fusedPipeline.process(source, edgeDetectThreshold);
     System.out.println("Processed Edge Detection");
     return processedImage;
   }
 
   public BufferedImage preprocessImage(BufferedImage img, int edgeDetectThreshold) {
     BufferedImage processedImage = img;
-    processedImage = greyScale(processedImage);
 
+    if (exceedsMaxSide(img)) { // Shrink first so the blurs run at the working size
+      processedImage = pyramid(img).fit(maxSide);
+    }
+
+    processedImage = greyScale(processedImage);
 
     processedImage = gaussianBlur3(processedImage);
     processedImage = gaussianBlur5(gaussianBlur5(processedImage));
-    if (img.getWidth() > 900 || img.getHeight() > 900) {
-      processedImage = resize(processedImage, 900);   
-    }
 
     System.out.println("Processed Edge Detection");
     return processedImage;
   }
 
+  /**
+   * Binarizes an image against its mean grey value.
+   * @param img The image to binarize.
+   * @return The binarized image.
+   */
   public BufferedImage contrastDetect(BufferedImage img) {
-    BufferedImage temp = greyScale(img); 
-    BufferedImage processedImage = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
-    int averagePixel = 0;
-
-    for (int x = 0; x < temp.getWidth(); x++) {
-      for (int y = 0; y < temp.getHeight(); y++) {
-        averagePixel += (int)(temp.getRGB(x, y) & 0xFF);
-      }
-    }
+    return engine.contrastDetect(greyScale(img));
+  }
+
+  /**
+   * Binarizes an image like contrastDetect but packs the result into a wall grid for MazeSolver.
+   * @param img The image to binarize.
+   * @return The wall grid.
+   */
+  public WallGrid contrastGrid(BufferedImage img) {
+    return engine.contrastGrid(greyScale(img));
+  }
+
+  /**
+   * Detects edges like processImage but packs the result into a wall grid for MazeSolver.
+   * @param img The image to process.
+   * @param edgeDetectThreshold The minimum gradient magnitude of an edge.
+   * @return The wall grid.
+   */
+  public WallGrid edgeGrid(BufferedImage img, int edgeDetectThreshold) {
+    return gradientField(img).grid(edgeDetectThreshold);
+  }
+
+  /**
+   * Binarizes an image against the mean of the window around each pixel, which copes with uneven
+   * lighting where contrastDetect's single global mean does not.
+   * @param img The image to binarize.
+   * @param window The side length of the window in pixels.
+   * @param sensitivity How far below the local mean a pixel must be to count as a wall, 0 - 1.
+   * @return The binarized image.
+   */
+  public BufferedImage adaptiveThreshold(BufferedImage img, int window, double sensitivity) {
+    return thresholdTables(img).bradley(window, sensitivity);
+  }
+
+  /**
+   * Binarizes an image against Sauvola thresholds from the local mean and deviation.
+   * @param img The image to binarize.
+   * @param window The side length of the window in pixels.
+   * @param k How strongly local deviation lowers the threshold, typically 0.2 - 0.5.
+   * @return The binarized image.
+   */
+  public BufferedImage sauvolaThreshold(BufferedImage img, int window, double k) {
+    return thresholdTables(img).sauvola(window, k);
+  }
+
+  /**
+   * Binarizes an image against its Otsu threshold.
+   * @param img The image to binarize.
+   * @return The binarized image.
+   */
+  public BufferedImage otsuThreshold(BufferedImage img) {
+    return thresholdTables(img).otsu();
+  }
 
-    averagePixel /= (temp.getWidth() * temp.getHeight());
-
-    for (int x = 0; x < temp.getWidth(); x++) {
-      for (int y = 0; y < temp.getHeight(); y++) {
-        int pixel = (int)(temp.getRGB(x, y) & 0xFF);
-        if (pixel > averagePixel) {
-          processedImage.setRGB(x, y, Color.WHITE.getRGB());
-        } else {
-          processedImage.setRGB(x, y, Color.BLACK.getRGB());
-        }
-      }
+  /**
+   * Gets the summed-area tables for an image, building them only when the image changes so that
+   * trying other windows or sensitivities just re-thresholds.
+   * @param img The image.
+   * @return The tables for the image.
+   */
+  public IntegralThreshold thresholdTables(BufferedImage img) {
+    if (img != thresholdSource) {
+      thresholdTables = new IntegralThreshold(engine, greyScale(img));
+      thresholdSource = img;
     }
 
-    return processedImage; 
+    return thresholdTables;
   }
 
   /**
@@ -73,27 +187,13 @@ public class ImageProcessing {
     return greyImage; 
   }
 
+  /**
+   * Applies a 3x3 Gaussian blur to an image.
+   * @param img The image to blur.
+   * @return The blurred image.
+   */
   public BufferedImage gaussianBlur3(BufferedImage img) {
-    BufferedImage blurredImage = new BufferedImage(img.getWidth() - 2, img.getHeight() - 2, BufferedImage.TYPE_BYTE_GRAY);
-    int pixel;
-
-    for (int x = 0; x < blurredImage.getWidth(); x++) {
-      for (int y = 0; y < blurredImage.getHeight(); y++) {
-        pixel = (int)(4 * (img.getRGB(x+1, y+1) & 0xFF) // Gaussian blur for 3x3 starting from topleft 
-        + 2 * (img.getRGB(x+1, y) & 0xFF)
-        + 2 * (img.getRGB(x+1, y+2) & 0xFF)
-        + 2 * (img.getRGB(x, y+1) & 0xFF)
-        + 2 * (img.getRGB(x+2, y+1) & 0xFF)
-        + (img.getRGB(x,y) & 0xFF) 
-        + (img.getRGB(x+2,y) & 0xFF)
-        + (img.getRGB(x,y+2) & 0xFF)
-        + (img.getRGB(x+2,y+2) & 0xFF))/16;
-        int argb = (255<<24) | (pixel << 16) | (pixel << 8) | pixel;
-        blurredImage.setRGB(x, y, argb);
-      }
-    }
-
-    return blurredImage;
+    return engine.gaussianBlur3(img);
   }
 
   /**
@@ -102,42 +202,7 @@ public class ImageProcessing {
    * @return The blurred image.
    */
   public BufferedImage gaussianBlur5(BufferedImage img) {
-    BufferedImage blurredImage = new BufferedImage(img.getWidth() - 4, img.getHeight() - 4, BufferedImage.TYPE_BYTE_GRAY);
-    int pixel;
-
-    for (int x = 0; x < blurredImage.getWidth(); x++) {
-      for (int y = 0; y < blurredImage.getHeight(); y++) {
-        pixel = (int)( (41 * (img.getRGB(x+2, y+2) & 0xFF) // Gaussian blur for 5x5 starting from topleft
-        + 26 * (img.getRGB(x+1, y+2) & 0xFF)
-        + 26 * (img.getRGB(x+2, y+1) & 0xFF)
-        + 26 * (img.getRGB(x+3, y+2) & 0xFF)
-        + 26 * (img.getRGB(x+2, y+3) & 0xFF)
-        + 16 * (img.getRGB(x+1, y+1) & 0xFF)
-        + 16 * (img.getRGB(x+3, y+1) & 0xFF)
-        + 16 * (img.getRGB(x+1, y+3) & 0xFF)
-        + 16 * (img.getRGB(x+3, y+3) & 0xFF)
-        + 7 * (img.getRGB(x, y+2) & 0xFF)
-        + 7 * (img.getRGB(x+2, y) & 0xFF)
-        + 7 * (img.getRGB(x+4, y+2) & 0xFF)
-        + 7 * (img.getRGB(x+2, y+4) & 0xFF)
-        + 4 * (img.getRGB(x, y+1) & 0xFF)
-        + 4 * (img.getRGB(x+1, y) & 0xFF)
-        + 4 * (img.getRGB(x+4, y+1) & 0xFF)
-        + 4 * (img.getRGB(x+1, y+4) & 0xFF)
-        + 4 * (img.getRGB(x, y+3) & 0xFF)
-        + 4 * (img.getRGB(x+3, y) & 0xFF)
-        + 4 * (img.getRGB(x+4, y+3) & 0xFF)
-        + 4 * (img.getRGB(x+3, y+4) & 0xFF)
-        + (img.getRGB(x, y) & 0xFF)
-        + (img.getRGB(x+4, y) & 0xFF)
-        + (img.getRGB(x, y+4) & 0xFF)
-        + (img.getRGB(x+4, y+4) & 0xFF))/273);
-        int argb = (255<<24) | (pixel << 16) | (pixel << 8) | pixel;
-        blurredImage.setRGB(x, y, argb);
-      }
-    }
-
-    return blurredImage;
+    return engine.gaussianBlur5(img);
   }
 
   /**
@@ -146,78 +211,83 @@ public class ImageProcessing {
    * @return The edge-detected image.
    */
   public BufferedImage edgeDetect(BufferedImage img, int threshold) {
-    BufferedImage edgeImage = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
-    int[][] vertDetect = new int[img.getWidth()][img.getHeight()]; 
-    int[][] horizDetect = new int[img.getWidth()][img.getHeight()];
-    int[][] edgeDetect = new int[img.getWidth()][img.getHeight()];
-    int pixel = 0;
-
-    for (int x = 1; x < img.getWidth() - 1; x++) {
-      for (int y = 1; y < img.getHeight() - 1; y++) {
-        horizDetect[x][y] = (int)((((img.getRGB(x-1, y-1) & 0xFF)
-        + (img.getRGB(x, y-1) & 0xFF)
-        + (img.getRGB(x+1, y-1) & 0xFF))
-        - ((img.getRGB(x-1, y+1) & 0xFF)
-        + (img.getRGB(x, y+1) & 0xFF)
-        + (img.getRGB(x+1, y+1) & 0xFF)))/6);
-
-        vertDetect[x][y] = (int)((((img.getRGB(x-1, y-1) & 0xFF)
-        + (img.getRGB(x-1, y) & 0xFF)
-        + (img.getRGB(x-1, y+1) & 0xFF))
-        - ((img.getRGB(x+1, y-1) & 0xFF)
-        + (img.getRGB(x+1, y) & 0xFF)
-        + (img.getRGB(x+1, y+1) & 0xFF)))/6);
-
-        edgeDetect[x][y] = (int)(Math.sqrt(Math.pow(horizDetect[x][y], 2) + Math.pow(vertDetect[x][y], 2)));
-        
-        if (edgeDetect[x][y] < threshold) {
-          pixel = (255<<24) | (pixel << 16) | (pixel << 8) | 255;
-        } else {
-          pixel = 0;
-        }
-        
-        edgeImage.setRGB(x, y, pixel);
-      }
-    }
-
-    return edgeImage;
+    return engine.edgeDetect(img, threshold);
   }
 
   /**
-   * Resizes current image to desired width and height.
+   * Resizes current image to fit within maxSide, averaging the pixels that fall on each output pixel.
    * @param img The image to resize.
    * @param maxSide The maximum side length of the image.
-   * @return The resized image.
+   * @return The resized image, or the image itself when it already fits.
    */
   public BufferedImage resize(BufferedImage img, int maxSide) {
-    int width;
-    int height;
-
-    if (maxSide < img.getWidth() || maxSide < img.getHeight()) {
-      if (img.getWidth() > img.getHeight()) {
-        int difference = maxSide - img.getWidth();
-        width = maxSide;
-        height = img.getHeight() + difference * img.getHeight() / img.getWidth();
-      } else if (img.getWidth() < img.getHeight()) {
-        int difference = maxSide - img.getHeight();
-        height = maxSide;
-        width = img.getWidth() + difference * img.getWidth() / img.getHeight();
-      } else {
-        width = maxSide;
-        height = maxSide;
-      }
-    } else {
-      throw new IllegalArgumentException("Image is already smaller than the desired size.");
+    if (maxSide >= img.getWidth() && maxSide >= img.getHeight()) {
+      return img;
     }
 
-    BufferedImage resizedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-    Graphics2D g = resizedImage.createGraphics();
-    g.drawImage(img, 0, 0, width, height, null);
-    g.dispose();
+    int[] size = fitWithin(img.getWidth(), img.getHeight(), maxSide);
+    BufferedImage resizedImage = AreaAccumulator.shrink(img, size[0], size[1], false);
 
     System.out.println("Resized");
     return resizedImage;
   }
 
+  /**
+   * Gets the pyramid of an image's grey plane, building it only when the image changes.
+   * @param img The image.
+   * @return The pyramid for the image.
+   */
+  public ImagePyramid pyramid(BufferedImage img) {
+    if (img != pyramidSource) {
+      pyramid = new ImagePyramid(img, this);
+      pyramidSource = img;
+    }
+
+    return pyramid;
+  }
+
+  /**
+   * Works out the size resize gives an image, keeping its aspect ratio.
+   * @param width The width of the image.
+   * @param height The height of the image.
+   * @param maxSide The maximum side length of the result.
+   * @return The width and height.
+   */
+  public static int[] fitWithin(int width, int height, int maxSide) {
+    if (width > height) {
+      return new int[] {maxSide, height + (maxSide - width) * height / width};
+    } else if (width < height) {
+      return new int[] {width + (maxSide - height) * width / height, maxSide};
+    } else {
+      return new int[] {maxSide, maxSide};
+    }
+  }
+
+  /**
+   * Sets the longest side images are shrunk to before edge detection.
+   * @param maxSide The longest side in pixels, or 0 to never shrink.
+   */
+  public void setMaxSide(int maxSide) {
+    this.maxSide = maxSide;
+    gradientSource = null;
+  }
+
+  /**
+   * Gets the longest side images are shrunk to before edge detection.
+   * @return The longest side in pixels, 0 when images are never shrunk.
+   */
+  public int getMaxSide() {
+    return maxSide;
+  }
+
+  /**
+   * Checks whether an image is larger than the size limit.
+   * @param img The image.
+   * @return True when the image has to be shrunk.
+   */
+  public boolean exceedsMaxSide(BufferedImage img) {
+    return maxSide > 0 && (img.getWidth() > maxSide || img.getHeight() > maxSide);
+  }
+
 }
 
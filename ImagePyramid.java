@@ -0,0 +1,106 @@
+import java.awt.image.*;
+import java.util.ArrayList;
+
+/**
+ * Successive 2x reductions of an image's grey plane, each pixel the average of the 2x2 block above
+ * it. Levels are only built when first asked for, so consumers can each pick the resolution they
+ * need from one pyramid instead of rescaling the original again.
+ */
+public class ImagePyramid {
+
+  private final ArrayList<BufferedImage> levels = new ArrayList<>(); // Level 0 is full size
+
+  /**
+   * Starts a pyramid from an image.
+   * @param img The image.
+   * @param processor Used to greyscale the image.
+   */
+  public ImagePyramid(BufferedImage img, ImageProcessing processor) {
+    levels.add(processor.greyScale(img));
+  }
+
+  /**
+   * Gets the number of levels down to a 1 pixel side.
+   * @return The number of levels.
+   */
+  public int getLevelCount() {
+    int side = Math.min(levels.get(0).getWidth(), levels.get(0).getHeight());
+    int count = 1;
+    while (side > 1) {
+      side = (side + 1) / 2;
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Gets a level, building it and the ones above it if needed.
+   * @param level The level, 0 for full size, each one half the size of the last.
+   * @return The greyscale image at that level.
+   */
+  public BufferedImage getLevel(int level) {
+    if (level < 0 || level >= getLevelCount()) {
+      throw new IllegalArgumentException("No pyramid level " + level);
+    }
+
+    while (levels.size() <= level) {
+      levels.add(halve(levels.get(levels.size() - 1)));
+    }
+
+    return levels.get(level);
+  }
+
+  /**
+   * Gets the image shrunk to fit within maxSide, starting from the smallest level that is still at
+   * least that size and averaging it down the rest of the way.
+   * @param maxSide The longest side of the result.
+   * @return The greyscale image, the full-size one when it already fits.
+   */
+  public BufferedImage fit(int maxSide) {
+    BufferedImage full = levels.get(0);
+    if (full.getWidth() <= maxSide && full.getHeight() <= maxSide) {
+      return full;
+    }
+
+    int[] size = ImageProcessing.fitWithin(full.getWidth(), full.getHeight(), maxSide);
+    int level = 0;
+    while (level + 1 < getLevelCount() && (full.getWidth() >> (level + 1)) >= size[0] && (full.getHeight() >> (level + 1)) >= size[1]) {
+      level++;
+    }
+
+    BufferedImage source = getLevel(level);
+    if (source.getWidth() == size[0] && source.getHeight() == size[1]) {
+      return source;
+    }
+
+    return AreaAccumulator.shrink(source, size[0], size[1], true);
+  }
+
+  /**
+   * Builds the next level down by averaging 2x2 blocks of raw grey samples. An odd last row or
+   * column is averaged on its own.
+   */
+  private static BufferedImage halve(BufferedImage img) {
+    int w = img.getWidth();
+    int h = img.getHeight();
+    int outW = (w + 1) / 2;
+    int outH = (h + 1) / 2;
+    byte[] src = GreyPlaneEngine.samples(img);
+    BufferedImage half = new BufferedImage(outW, outH, BufferedImage.TYPE_BYTE_GRAY);
+    byte[] out = GreyPlaneEngine.samples(half);
+
+    for (int y = 0; y < outH; y++) {
+      int top = 2 * y * w;
+      int bottom = 2 * y + 1 < h ? top + w : top;
+      for (int x = 0; x < outW; x++) {
+        int left = 2 * x;
+        int right = left + 1 < w ? left + 1 : left;
+        int sum = (src[top + left] & 0xFF) + (src[top + right] & 0xFF)
+            + (src[bottom + left] & 0xFF) + (src[bottom + right] & 0xFF);
+        out[y * outW + x] = (byte) ((sum + 2) >> 2);
+      }
+    }
+
+    return half;
+  }
+}
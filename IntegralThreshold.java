@@ -0,0 +1,241 @@
+import java.awt.image.*;
+
+/**
+ * Binarizes a greyscale image against local or global thresholds. Building one reads the image once
+ * into a summed-area table of grey values and of squared grey values plus a histogram, after which
+ * the mean and deviation of any window come out in constant time. Changing the window size or
+ * sensitivity only costs one more pass over the pixels.
+ */
+public class IntegralThreshold {
+
+  private static final double DYNAMIC_RANGE = 128; // Sauvola's R for 8 bit grey levels
+
+  private final GreyPlaneEngine engine;
+  private final int width;
+  private final int height;
+  private final byte[] grey; // sRGB grey values, row-major
+  private final long[] sums; // (width + 1) x (height + 1) table of grey sums
+  private final long[] squares; // (width + 1) x (height + 1) table of squared grey sums
+  private final int[] histogram = new int[256];
+
+  /**
+   * Builds the tables for a greyscale image.
+   * @param engine The engine used to read the image and to split threshold passes into bands.
+   * @param img The greyscale image.
+   */
+  public IntegralThreshold(GreyPlaneEngine engine, BufferedImage img) {
+    this.engine = engine;
+    this.width = img.getWidth();
+    this.height = img.getHeight();
+    this.grey = new byte[width * height];
+    this.sums = new long[(width + 1) * (height + 1)];
+    this.squares = new long[(width + 1) * (height + 1)];
+
+    int[] src = engine.load(img);
+    int stride = width + 1;
+
+    for (int y = 0; y < height; y++) {
+      long rowSum = 0;
+      long rowSquares = 0;
+      int above = y * stride;
+      int here = above + stride;
+      for (int x = 0; x < width; x++) {
+        int p = src[y * width + x];
+        grey[y * width + x] = (byte) p;
+        histogram[p]++;
+        rowSum += p;
+        rowSquares += p * p;
+        sums[here + x + 1] = sums[above + x + 1] + rowSum;
+        squares[here + x + 1] = squares[above + x + 1] + rowSquares;
+      }
+    }
+  }
+
+  /**
+   * Gets the width of the image the tables were built from.
+   * @return The width.
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Gets the height of the image the tables were built from.
+   * @return The height.
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Gets the sum of grey values in a rectangle.
+   * @param x0 The left edge, inclusive.
+   * @param y0 The top edge, inclusive.
+   * @param x1 The right edge, exclusive.
+   * @param y1 The bottom edge, exclusive.
+   * @return The sum.
+   */
+  public long sum(int x0, int y0, int x1, int y1) {
+    return area(sums, x0, y0, x1, y1);
+  }
+
+  /**
+   * Gets the mean grey value in a rectangle.
+   * @param x0 The left edge, inclusive.
+   * @param y0 The top edge, inclusive.
+   * @param x1 The right edge, exclusive.
+   * @param y1 The bottom edge, exclusive.
+   * @return The mean.
+   */
+  public double mean(int x0, int y0, int x1, int y1) {
+    return (double) sum(x0, y0, x1, y1) / ((x1 - x0) * (y1 - y0));
+  }
+
+  /**
+   * Binarizes against the mean of the whole image, the same as ImageProcessing.contrastDetect.
+   * @return White where the pixel is brighter than the mean, black elsewhere.
+   */
+  public BufferedImage global() {
+    return global(sum(0, 0, width, height) / ((long) width * height));
+  }
+
+  /**
+   * Binarizes against the Otsu threshold, the grey level that best separates the histogram into
+   * two classes.
+   * @return White where the pixel is brighter than the threshold, black elsewhere.
+   */
+  public BufferedImage otsu() {
+    return global(otsuLevel());
+  }
+
+  /**
+   * Finds the Otsu threshold from the histogram.
+   * @return The grey level maximising the between-class variance.
+   */
+  public int otsuLevel() {
+    long total = (long) width * height;
+    long totalSum = sum(0, 0, width, height);
+    long backCount = 0;
+    long backSum = 0;
+    double bestVariance = -1;
+    int level = 0;
+
+    for (int t = 0; t < 256; t++) {
+      backCount += histogram[t];
+      backSum += (long) t * histogram[t];
+      long foreCount = total - backCount;
+      if (backCount == 0 || foreCount == 0) {
+        continue;
+      }
+
+      double backMean = (double) backSum / backCount;
+      double foreMean = (double) (totalSum - backSum) / foreCount;
+      double variance = (double) backCount * foreCount * (backMean - foreMean) * (backMean - foreMean);
+      if (variance > bestVariance) {
+        bestVariance = variance;
+        level = t;
+      }
+    }
+
+    return level;
+  }
+
+  /**
+   * Binarizes each pixel against the mean of the window around it (Bradley-Roth). A pixel is a wall
+   * when it is darker than the local mean by more than the sensitivity.
+   * @param window The side length of the window, clipped at the image borders.
+   * @param sensitivity How far below the local mean a pixel must be, as a fraction from 0 to 1.
+   * @return White for open space, black for walls.
+   */
+  public BufferedImage bradley(int window, double sensitivity) {
+    checkWindow(window);
+    int half = window / 2;
+    double scale = 1 - sensitivity;
+    BufferedImage processedImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    byte[] out = GreyPlaneEngine.samples(processedImage);
+
+    engine.forEachBand(height, (from, to) -> {
+      for (int y = from; y < to; y++) {
+        int y0 = Math.max(0, y - half);
+        int y1 = Math.min(height, y + half + 1);
+        for (int x = 0; x < width; x++) {
+          int x0 = Math.max(0, x - half);
+          int x1 = Math.min(width, x + half + 1);
+          long count = (long) (x1 - x0) * (y1 - y0);
+          int p = grey[y * width + x] & 0xFF;
+          out[y * width + x] = p * count > area(sums, x0, y0, x1, y1) * scale ? GreyPlaneEngine.WHITE : GreyPlaneEngine.BLACK;
+        }
+      }
+    });
+
+    return processedImage;
+  }
+
+  /**
+   * Binarizes each pixel against a threshold from the mean and standard deviation of the window
+   * around it (Sauvola). Flat regions are pushed below their mean, textured ones stay near it.
+   * @param window The side length of the window, clipped at the image borders.
+   * @param k How strongly the local deviation lowers the threshold, typically 0.2 - 0.5.
+   * @return White for open space, black for walls.
+   */
+  public BufferedImage sauvola(int window, double k) {
+    checkWindow(window);
+    int half = window / 2;
+    BufferedImage processedImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    byte[] out = GreyPlaneEngine.samples(processedImage);
+
+    engine.forEachBand(height, (from, to) -> {
+      for (int y = from; y < to; y++) {
+        int y0 = Math.max(0, y - half);
+        int y1 = Math.min(height, y + half + 1);
+        for (int x = 0; x < width; x++) {
+          int x0 = Math.max(0, x - half);
+          int x1 = Math.min(width, x + half + 1);
+          double count = (double) (x1 - x0) * (y1 - y0);
+          double mean = area(sums, x0, y0, x1, y1) / count;
+          double variance = Math.max(0, area(squares, x0, y0, x1, y1) / count - mean * mean);
+          double threshold = mean * (1 + k * (Math.sqrt(variance) / DYNAMIC_RANGE - 1));
+          int p = grey[y * width + x] & 0xFF;
+          out[y * width + x] = p > threshold ? GreyPlaneEngine.WHITE : GreyPlaneEngine.BLACK;
+        }
+      }
+    });
+
+    return processedImage;
+  }
+
+  /**
+   * Binarizes every pixel against one grey level.
+   * @param level The level a pixel must exceed to be white.
+   * @return The binarized image.
+   */
+  private BufferedImage global(long level) {
+    BufferedImage processedImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    byte[] out = GreyPlaneEngine.samples(processedImage);
+
+    engine.forEachBand(height, (from, to) -> {
+      for (int i = from * width; i < to * width; i++) {
+        out[i] = (grey[i] & 0xFF) > level ? GreyPlaneEngine.WHITE : GreyPlaneEngine.BLACK;
+      }
+    });
+
+    return processedImage;
+  }
+
+  /**
+   * Reads a rectangle out of a summed-area table.
+   */
+  private long area(long[] table, int x0, int y0, int x1, int y1) {
+    int stride = width + 1;
+    return table[y1 * stride + x1] - table[y0 * stride + x1] - table[y1 * stride + x0] + table[y0 * stride + x0];
+  }
+
+  /**
+   * Checks that a window size is usable.
+   */
+  private static void checkWindow(int window) {
+    if (window < 1) {
+      throw new IllegalArgumentException("Window size must be at least 1.");
+    }
+  }
+}
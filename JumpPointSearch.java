@@ -0,0 +1,224 @@
+import java.util.Arrays;
+
+/**
+ * Jump Point Search for a 4-connected grid of unit steps. Shortest paths are taken in a canonical
+ * form where a horizontal run only turns when the node diagonally behind the turn is closed, so
+ * horizontal moves jump straight on until they reach such a forced turn, the end or a wall.
+ * Vertical moves may turn either way, so a vertical jump stops on any row where a horizontal jump
+ * finds something. A* runs over the jump points only, and the straight segments between them are
+ * filled back in when the path is rebuilt.
+ *
+ * Horizontal jumps scan NodeGrid's packed rows a word at a time: the stopping columns of a word
+ * are its closed nodes plus the nodes whose neighbour above or below opens up, found with a shift.
+ */
+public class JumpPointSearch implements SearchStrategy {
+
+  @Override
+  public int[] search(NodeGrid grid, int start, int end, SolveMonitor monitor) {
+    if (start == end) {
+      return new int[] {start};
+    }
+
+    int columns = grid.getColumns();
+    byte[] moves = new byte[grid.size()]; //Move + 1 of the jump that reached each jump point
+    int[] cost = new int[grid.size()];
+    Arrays.fill(cost, Integer.MAX_VALUE);
+    NodeHeap open = new NodeHeap();
+
+    cost[start] = 0;
+    moves[start] = 1; //Any mark will do, the start is never walked past
+    open.push(start, AStarSearch.key(grid.distance(start, end), 0));
+    int expanded = 0;
+
+    while (!open.isEmpty()) {
+      long top = open.peekKey();
+      int current = open.pop();
+      if (AStarSearch.costOf(top) != cost[current]) { //Stale entry
+        continue;
+      }
+      expanded++;
+      monitor.expanded(expanded, open.size());
+
+      if (current == end) {
+        System.out.println("Found Ending Node, expanded " + Integer.toString(expanded) + " jump points");
+        return rebuild(grid, moves, cost, start, end);
+      }
+
+      int column = current % columns;
+      int row = current / columns;
+      int arrived = current == start ? -1 : moves[current] - 1;
+      for (int move = 0; move < 4; move++) {
+        if (!isSuccessor(grid, column, row, arrived, move)) {
+          continue;
+        }
+
+        int jumpPoint = jump(grid, column, row, move, end);
+        if (jumpPoint < 0) {
+          continue;
+        }
+
+        int next = cost[current] + grid.distance(current, jumpPoint);
+        if (next < cost[jumpPoint]) {
+          cost[jumpPoint] = next;
+          moves[jumpPoint] = (byte) (move + 1);
+          open.push(jumpPoint, AStarSearch.key(next + grid.distance(jumpPoint, end), next));
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks whether a move leaves a node on a canonical path. The start may go anywhere, vertical
+   * arrivals may carry on or turn either way, and horizontal arrivals carry on or take a forced
+   * turn.
+   * @param arrived The move that reached the node, or -1 for the start.
+   */
+  private static boolean isSuccessor(NodeGrid grid, int column, int row, int arrived, int move) {
+    if (arrived < 0) {
+      return true;
+    }
+    if (move == NodeGrid.opposite(arrived)) {
+      return false;
+    }
+    if (arrived == NodeGrid.DOWN || arrived == NodeGrid.UP || move == arrived) {
+      return true;
+    }
+
+    int behind = arrived == NodeGrid.RIGHT ? column - 1 : column + 1;
+    int side = move == NodeGrid.DOWN ? row + 1 : row - 1;
+    return grid.isOpen(column, side) && !grid.isOpen(behind, side);
+  }
+
+  /**
+   * Jumps from a node in a direction.
+   * @return The jump point reached, or -1 when the jump runs into a wall first.
+   */
+  private static int jump(NodeGrid grid, int column, int row, int move, int end) {
+    int columns = grid.getColumns();
+    if (move == NodeGrid.RIGHT || move == NodeGrid.LEFT) {
+      int stop = jumpHorizontal(grid, column, row, move == NodeGrid.RIGHT, end);
+      return stop < 0 ? -1 : row * columns + stop;
+    }
+
+    int dy = move == NodeGrid.DOWN ? 1 : -1;
+    for (int y = row + dy; grid.isOpen(column, y); y += dy) {
+      int node = y * columns + column;
+      if (node == end || jumpHorizontal(grid, column, y, true, end) >= 0 || jumpHorizontal(grid, column, y, false, end) >= 0) {
+        return node;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Scans a row for the first column past the given one where a horizontal jump stops.
+   * @param right True to scan rightwards, false for leftwards.
+   * @return The column of the jump point, or -1 when a closed node or the edge comes first.
+   */
+  private static int jumpHorizontal(NodeGrid grid, int column, int row, boolean right, int end) {
+    long[] words = grid.words();
+    int stride = grid.getStride();
+    int columns = grid.getColumns();
+    int base = row * stride;
+    int above = row > 0 ? base - stride : -1;
+    int below = row + 1 < grid.getRows() ? base + stride : -1;
+    int endWord = end / columns == row ? (end % columns) >>> 6 : -1;
+    long endBit = 1L << (end % columns);
+
+    if (right) {
+      if (column + 1 >= columns) {
+        return -1;
+      }
+      for (int word = (column + 1) >>> 6; word < stride; word++) {
+        long open = words[base + word];
+        long stops = ~open | forcedRight(words, above, word) | forcedRight(words, below, word);
+        if (word == endWord) {
+          stops |= endBit;
+        }
+        if (word == (column + 1) >>> 6) {
+          stops &= -1L << (column + 1);
+        }
+        if (stops != 0) {
+          int stop = (word << 6) + Long.numberOfTrailingZeros(stops);
+          return (open & (1L << stop)) != 0 ? stop : -1; //Padding bits are clear, so the edge reads as closed
+        }
+      }
+      return -1;
+    }
+
+    if (column == 0) {
+      return -1;
+    }
+    for (int word = (column - 1) >>> 6; word >= 0; word--) {
+      long open = words[base + word];
+      long stops = ~open | forcedLeft(words, above, word, stride) | forcedLeft(words, below, word, stride);
+      if (word == endWord) {
+        stops |= endBit;
+      }
+      if (word == (column - 1) >>> 6) {
+        stops &= -1L >>> (63 - ((column - 1) & 63));
+      }
+      if (stops != 0) {
+        int stop = (word << 6) + 63 - Long.numberOfLeadingZeros(stops);
+        return (open & (1L << stop)) != 0 ? stop : -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Finds the nodes of a word whose neighbour in the given row is open while the neighbour's left
+   * hand node is closed, the turns forced when moving right.
+   */
+  private static long forcedRight(long[] words, int side, int word) {
+    if (side < 0) {
+      return 0;
+    }
+    long open = words[side + word];
+    long previous = word > 0 ? words[side + word - 1] >>> 63 : 0;
+    return open & ~((open << 1) | previous);
+  }
+
+  /**
+   * Finds the nodes of a word whose neighbour in the given row is open while the neighbour's right
+   * hand node is closed, the turns forced when moving left.
+   */
+  private static long forcedLeft(long[] words, int side, int word, int stride) {
+    if (side < 0) {
+      return 0;
+    }
+    long open = words[side + word];
+    long next = word + 1 < stride ? words[side + word + 1] << 63 : 0;
+    return open & ~((open >>> 1) | next);
+  }
+
+  /**
+   * Rebuilds the full path by walking each jump back along the move that made it until reaching a
+   * reached node whose cost accounts for the rest of the path.
+   */
+  private static int[] rebuild(NodeGrid grid, byte[] moves, int[] cost, int start, int end) {
+    int columns = grid.getColumns();
+    int[] path = new int[cost[end] + 1];
+    int i = path.length - 1;
+    path[i] = end;
+
+    int at = end;
+    while (at != start) {
+      int move = moves[at] - 1;
+      int back = move == NodeGrid.RIGHT ? -1 : move == NodeGrid.LEFT ? 1 : move == NodeGrid.DOWN ? -columns : columns;
+      int node = at;
+      int steps = 0;
+      do {
+        node += back;
+        steps++;
+        path[--i] = node;
+      } while (moves[node] == NodeGrid.UNREACHED || cost[node] + steps != cost[at]);
+      at = node;
+    }
+
+    return path;
+  }
+}
@@ -0,0 +1,354 @@
+import java.util.Arrays;
+
+/**
+ * A NodeGrid with its corridors contracted. Every open node with other than two open neighbours
+ * becomes a vertex, a junction or a dead end, and every chain of two-neighbour nodes between two
+ * vertices becomes one edge weighted by its number of steps, keeping the chain's nodes so paths
+ * can be rebuilt node by node. A corridor that loops back on itself with no junction at all gets
+ * one of its nodes made a vertex. Searches run A* over the vertices, with a start or end inside a
+ * corridor joined to both ends of its edge.
+ *
+ * The graph is built once for one grid and never changes, so one instance can serve any number of
+ * searches, from any number of threads. Searching another grid, such as a corridor restricted by
+ * coarse-to-fine solving, falls back to plain A* on that grid.
+ */
+public class JunctionGraph implements SearchStrategy {
+
+  // How a vertex was first reached when not along an edge
+  private static final int START = -1; // It is the start
+  private static final int START_BACKWARD = -2; // From a start inside a corridor, back towards edgeFrom
+  private static final int START_FORWARD = -3; // From a start inside a corridor, on towards edgeTo
+
+  private final NodeGrid grid;
+  private final int[] owner; // Per node: vertex * 2 + 1, edge * 2 for corridor nodes, -1 when closed
+  private final int[] vertexNodes; // Node of each vertex
+  private final int vertexCount;
+  private final int[] edgeFrom; // Vertex each edge's cells start beside
+  private final int[] edgeTo; // Vertex each edge's cells end beside
+  private final int[] cellStart; // Offset of each edge's first cell in cells
+  private final int[] cellCount; // Corridor nodes on each edge, one less than its weight
+  private final int edgeCount;
+  private final int[] cells; // Corridor nodes of every edge in order from edgeFrom to edgeTo
+  private final int[] adjacencyStart; // Offset of each vertex's edges in adjacency, plus one past the end
+  private final int[] adjacency; // Edges touching each vertex, self loops left out
+  private final AStarSearch fallback = new AStarSearch();
+
+  /**
+   * Contracts the corridors of a grid.
+   * @param grid The validated nodes.
+   */
+  public JunctionGraph(NodeGrid grid) {
+    this.grid = grid;
+    int size = grid.size();
+    this.owner = new int[size];
+    Arrays.fill(owner, -1);
+
+    int[] vertices = new int[64];
+    int total = 0; // Vertices found so far
+    for (int node = 0; node < size; node++) {
+      if (grid.isOpen(node) && degree(grid, node) != 2) {
+        if (total == vertices.length) {
+          vertices = Arrays.copyOf(vertices, total * 2);
+        }
+        owner[node] = total * 2 + 1;
+        vertices[total++] = node;
+      }
+    }
+
+    Builder edges = new Builder();
+    for (int vertex = 0; vertex < total; vertex++) {
+      trace(edges, vertex, vertices[vertex]);
+    }
+    for (int node = 0; node < size; node++) { //Anything left is a corridor that loops with no junction
+      if (grid.isOpen(node) && owner[node] == -1) {
+        if (total == vertices.length) {
+          vertices = Arrays.copyOf(vertices, total * 2);
+        }
+        owner[node] = total * 2 + 1;
+        vertices[total] = node;
+        trace(edges, total++, node);
+      }
+    }
+
+    this.vertexNodes = Arrays.copyOf(vertices, total);
+    this.vertexCount = total;
+    this.edgeCount = edges.count;
+    this.edgeFrom = Arrays.copyOf(edges.from, edgeCount);
+    this.edgeTo = Arrays.copyOf(edges.to, edgeCount);
+    this.cellStart = Arrays.copyOf(edges.start, edgeCount);
+    this.cellCount = Arrays.copyOf(edges.length, edgeCount);
+    this.cells = Arrays.copyOf(edges.cells, edges.cellTotal);
+
+    this.adjacencyStart = new int[vertexCount + 1];
+    for (int edge = 0; edge < edgeCount; edge++) {
+      if (edgeFrom[edge] != edgeTo[edge]) {
+        adjacencyStart[edgeFrom[edge] + 1]++;
+        adjacencyStart[edgeTo[edge] + 1]++;
+      }
+    }
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      adjacencyStart[vertex + 1] += adjacencyStart[vertex];
+    }
+    this.adjacency = new int[adjacencyStart[vertexCount]];
+    int[] fill = Arrays.copyOf(adjacencyStart, vertexCount);
+    for (int edge = 0; edge < edgeCount; edge++) {
+      if (edgeFrom[edge] != edgeTo[edge]) {
+        adjacency[fill[edgeFrom[edge]]++] = edge;
+        adjacency[fill[edgeTo[edge]]++] = edge;
+      }
+    }
+
+    System.out.println("Contracted " + Integer.toString(grid.countOpen()) + " nodes to " + Integer.toString(vertexCount) + " vertices and " + Integer.toString(edgeCount) + " edges");
+  }
+
+  /**
+   * Follows every corridor leaving a vertex that has not been followed from its other end.
+   */
+  private void trace(Builder edges, int vertex, int node) {
+    for (int move = 0; move < 4; move++) {
+      int next = grid.step(node, move);
+      if (next < 0) {
+        continue;
+      }
+      if (owner[next] >= 0 && (owner[next] & 1) == 0) { //Corridor already followed from its other end
+        continue;
+      }
+      if (owner[next] >= 0) { //Neighbouring vertex, an edge with no cells
+        if (vertex < owner[next] >> 1) {
+          edges.add(vertex, owner[next] >> 1, 0);
+        }
+        continue;
+      }
+
+      int edge = edges.count;
+      int first = edges.cellTotal;
+      int heading = move;
+      while (owner[next] == -1) {
+        owner[next] = edge * 2;
+        edges.addCell(next);
+        for (int turn = 0; turn < 4; turn++) { //Two open neighbours, carry on through the one not behind
+          if (turn != NodeGrid.opposite(heading) && grid.step(next, turn) >= 0) {
+            heading = turn;
+            break;
+          }
+        }
+        next = grid.step(next, heading);
+      }
+      edges.add(vertex, owner[next] >> 1, edges.cellTotal - first);
+    }
+  }
+
+  private static int degree(NodeGrid grid, int node) {
+    int degree = 0;
+    for (int move = 0; move < 4; move++) {
+      if (grid.step(node, move) >= 0) {
+        degree++;
+      }
+    }
+    return degree;
+  }
+
+  @Override
+  public int[] search(NodeGrid grid, int start, int end, SolveMonitor monitor) {
+    if (grid != this.grid) {
+      return fallback.search(grid, start, end, monitor);
+    }
+    if (start == end) {
+      return new int[] {start};
+    }
+
+    int[] cost = new int[vertexCount];
+    Arrays.fill(cost, Integer.MAX_VALUE);
+    int[] via = new int[vertexCount]; // Edge each vertex was reached along, or how it was reached from the start
+    NodeHeap open = new NodeHeap();
+
+    int startEdge = -1;
+    int startIndex = -1;
+    if ((owner[start] & 1) == 1) {
+      reach(open, cost, via, owner[start] >> 1, 0, START, end);
+    } else {
+      startEdge = owner[start] >> 1;
+      startIndex = indexOf(startEdge, start);
+      reach(open, cost, via, edgeFrom[startEdge], startIndex + 1, START_BACKWARD, end);
+      reach(open, cost, via, edgeTo[startEdge], cellCount[startEdge] - startIndex, START_FORWARD, end);
+    }
+
+    int endVertex = (owner[end] & 1) == 1 ? owner[end] >> 1 : -1;
+    int endEdge = endVertex < 0 ? owner[end] >> 1 : -1;
+    int endIndex = endEdge < 0 ? -1 : indexOf(endEdge, end);
+
+    int best = Integer.MAX_VALUE;
+    int bestVertex = -1; // Vertex the best path leaves the graph at, -1 for straight along a shared corridor
+    boolean bestForward = false; // Whether it then runs along the end's corridor from edgeFrom
+    if (endEdge >= 0 && endEdge == startEdge) {
+      best = Math.abs(startIndex - endIndex);
+    }
+
+    int expanded = 0;
+    while (!open.isEmpty() && AStarSearch.fOf(open.peekKey()) < best) {
+      long top = open.peekKey();
+      int vertex = open.pop();
+      if (AStarSearch.costOf(top) != cost[vertex]) { //Stale entry
+        continue;
+      }
+      expanded++;
+      monitor.expanded(expanded, open.size());
+
+      if (vertex == endVertex && cost[vertex] < best) {
+        best = cost[vertex];
+        bestVertex = vertex;
+      }
+      if (endEdge >= 0 && vertex == edgeFrom[endEdge] && cost[vertex] + endIndex + 1 < best) {
+        best = cost[vertex] + endIndex + 1;
+        bestVertex = vertex;
+        bestForward = true;
+      }
+      if (endEdge >= 0 && vertex == edgeTo[endEdge] && cost[vertex] + cellCount[endEdge] - endIndex < best) {
+        best = cost[vertex] + cellCount[endEdge] - endIndex;
+        bestVertex = vertex;
+        bestForward = false;
+      }
+
+      for (int i = adjacencyStart[vertex]; i < adjacencyStart[vertex + 1]; i++) {
+        int edge = adjacency[i];
+        int other = edgeFrom[edge] == vertex ? edgeTo[edge] : edgeFrom[edge];
+        reach(open, cost, via, other, cost[vertex] + cellCount[edge] + 1, edge, end);
+      }
+    }
+
+    if (best == Integer.MAX_VALUE) {
+      return null;
+    }
+
+    System.out.println("Found Ending Node, expanded " + Integer.toString(expanded) + " vertices");
+    return rebuild(via, best, bestVertex, bestForward, start, startEdge, startIndex, end, endEdge, endIndex);
+  }
+
+  /**
+   * Lowers a vertex's cost if the new one is cheaper.
+   */
+  private void reach(NodeHeap open, int[] cost, int[] via, int vertex, int next, int edge, int end) {
+    if (next < cost[vertex]) {
+      cost[vertex] = next;
+      via[vertex] = edge;
+      open.push(vertex, AStarSearch.key(next + grid.distance(vertexNodes[vertex], end), next));
+    }
+  }
+
+  /**
+   * Lays out the path back to front: the tail from the last vertex to the end, each edge back to a
+   * start vertex, then the head from inside the start's corridor.
+   */
+  private int[] rebuild(int[] via, int length, int lastVertex, boolean forward, int start, int startEdge, int startIndex, int end, int endEdge, int endIndex) {
+    int[] path = new int[length + 1];
+    int at = length;
+    path[at] = end;
+
+    if (lastVertex < 0) { //Start and end share a corridor
+      int step = startIndex < endIndex ? -1 : 1;
+      for (int i = endIndex + step; at > 0; i += step) {
+        path[--at] = cells[cellStart[endEdge] + i];
+      }
+      return path;
+    }
+
+    if (endEdge >= 0) {
+      at = copyCells(path, at, endEdge, forward ? 0 : endIndex + 1, forward ? endIndex : cellCount[endEdge], forward);
+      path[--at] = vertexNodes[lastVertex];
+    }
+
+    int vertex = lastVertex;
+    while (via[vertex] >= 0) {
+      int edge = via[vertex];
+      boolean alongEdge = edgeTo[edge] == vertex;
+      int previous = alongEdge ? edgeFrom[edge] : edgeTo[edge];
+      at = copyCells(path, at, edge, 0, cellCount[edge], alongEdge);
+      path[--at] = vertexNodes[previous];
+      vertex = previous;
+    }
+
+    if (via[vertex] == START_BACKWARD) {
+      at = copyCells(path, at, startEdge, 0, startIndex, false);
+      path[--at] = start;
+    } else if (via[vertex] == START_FORWARD) {
+      at = copyCells(path, at, startEdge, startIndex + 1, cellCount[startEdge], true);
+      path[--at] = start;
+    }
+
+    return path;
+  }
+
+  /**
+   * Writes cells from..to of an edge into the path back to front, so they read forwards along the
+   * edge when forward is set and backwards otherwise.
+   * @return The new front of the written part of the path.
+   */
+  private int copyCells(int[] path, int at, int edge, int from, int to, boolean forward) {
+    for (int i = from; i < to; i++) {
+      path[--at] = cells[cellStart[edge] + (forward ? to - 1 - (i - from) : i)];
+    }
+    return at;
+  }
+
+  /**
+   * Finds where a corridor node sits along its edge.
+   */
+  private int indexOf(int edge, int node) {
+    for (int i = 0; i < cellCount[edge]; i++) {
+      if (cells[cellStart[edge] + i] == node) {
+        return i;
+      }
+    }
+    throw new IllegalStateException("Node " + node + " is not on edge " + edge);
+  }
+
+  /**
+   * Gets the number of vertices, junctions and dead ends.
+   * @return The number of vertices.
+   */
+  public int getVertexCount() {
+    return vertexCount;
+  }
+
+  /**
+   * Gets the number of edges, contracted corridors.
+   * @return The number of edges.
+   */
+  public int getEdgeCount() {
+    return edgeCount;
+  }
+
+  /**
+   * Collects edges and their cells while tracing.
+   */
+  private static class Builder {
+    private int[] from = new int[64];
+    private int[] to = new int[64];
+    private int[] start = new int[64];
+    private int[] length = new int[64];
+    private int[] cells = new int[256];
+    private int count;
+    private int cellTotal;
+
+    private void addCell(int node) {
+      if (cellTotal == cells.length) {
+        cells = Arrays.copyOf(cells, cellTotal * 2);
+      }
+      cells[cellTotal++] = node;
+    }
+
+    private void add(int fromVertex, int toVertex, int cellsAdded) {
+      if (count == from.length) {
+        from = Arrays.copyOf(from, count * 2);
+        to = Arrays.copyOf(to, count * 2);
+        start = Arrays.copyOf(start, count * 2);
+        length = Arrays.copyOf(length, count * 2);
+      }
+      from[count] = fromVertex;
+      to[count] = toVertex;
+      start[count] = cellTotal - cellsAdded;
+      length[count] = cellsAdded;
+      count++;
+    }
+  }
+}
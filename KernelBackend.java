@@ -0,0 +1,35 @@
+/**
+ * The per-row arithmetic of GreyPlaneEngine's filters. Every implementation must produce exactly
+ * the values ScalarKernels does; they only differ in how fast they get there.
+ */
+public interface KernelBackend {
+
+  /**
+   * Computes one row of the 3x3 Gaussian blur.
+   * @param src The sRGB grey plane.
+   * @param row The offset of the top source row of the 3x3 window.
+   * @param w The width of the source plane.
+   * @param dest Receives the blurred grey levels for the outW output pixels.
+   * @param outW The width of the blurred row, w - 2.
+   */
+  void blur3Row(int[] src, int row, int w, int[] dest, int outW);
+
+  /**
+   * Computes one row of the 5x5 Gaussian blur.
+   * @param src The sRGB grey plane.
+   * @param row The offset of the top source row of the 5x5 window.
+   * @param w The width of the source plane.
+   * @param dest Receives the blurred grey levels for the outW output pixels.
+   * @param outW The width of the blurred row, w - 4.
+   */
+  void blur5Row(int[] src, int row, int w, int[] dest, int outW);
+
+  /**
+   * Computes the squared gradient magnitudes of the interior pixels of one row.
+   * @param src The sRGB grey plane.
+   * @param mid The offset of the row.
+   * @param w The width of the plane.
+   * @param dest Receives the magnitudes at the same offsets as src, for x from 1 to w - 2.
+   */
+  void gradientRow(int[] src, int mid, int w, int[] dest);
+}
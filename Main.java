@@ -1,9 +1,17 @@
+import java.util.Arrays;
 
 public class Main {
   
   private static UI ui;
 
   public static void main(String[] args) {
+    if (args.length > 0 && args[0].equals("--harness")) { //Synthetic maze checks, see MazeHarness.USAGE
+      System.exit(MazeHarness.runCommand(Arrays.copyOfRange(args, 1, args.length)));
+    }
+    if (args.length > 0) { //Headless batch, see BatchPipeline.USAGE
+      System.exit(BatchPipeline.runCommand(args));
+    }
+
     ui = new UI();
   }
 
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Breadth first search over a MappedMaze, keeping all of its state in memory-mapped scratch files
+ * so the heap it needs is the same for any maze size. Each pixel has a visited bit and a 2 bit
+ * direction towards the end, both laid out in the maze's 64 x 64 tiles so neighbouring pixels share
+ * pages, and the queue is a ring of packed coordinates in a file of its own. The search runs from
+ * the end, so the path can be walked from the start and handed out in order without being held.
+ */
+public class MappedBreadthFirstSearch {
+
+  /**
+   * Receives the pixels of a path in order.
+   */
+  public interface PathSink {
+    void accept(int x, int y);
+  }
+
+  private static final long MAX_QUEUE = 1L << 27; // Longest frontier the queue file holds, 1 GiB
+
+  private final Path scratch;
+
+  /**
+   * Creates a search that keeps its state under a directory.
+   * @param scratch The directory for the scratch files, which are deleted as soon as they are mapped.
+   */
+  public MappedBreadthFirstSearch(Path scratch) {
+    this.scratch = scratch;
+  }
+
+  /**
+   * Finds a shortest path between two pixels.
+   * @param maze The maze.
+   * @param start The starting pixel.
+   * @param end The ending pixel.
+   * @param sink Receives the path from start to end, or nothing when there is no path.
+   * @return The number of pixels on the path, or -1 when there is no path.
+   * @throws IOException When the scratch files cannot be created.
+   */
+  public long solve(MappedMaze maze, int[] start, int[] end, PathSink sink) throws IOException {
+    if (!maze.isOpen(start[0], start[1]) || !maze.isOpen(end[0], end[1])) {
+      throw new IllegalArgumentException("Endpoints must be open pixels");
+    }
+
+    MappedLongArray visited = scratch(maze.tileWords());
+    MappedLongArray towards = scratch(maze.tileWords() * 2); // Direction to step towards the end
+    long capacity = Math.min(MAX_QUEUE, Long.highestOneBit((long) maze.getWidth() * maze.getHeight() - 1) << 1);
+    MappedLongArray queue = scratch(Math.max(1, capacity));
+    long mask = queue.length() - 1;
+
+    long head = 0;
+    long tail = 0;
+    queue.set(tail++ & mask, pack(end[0], end[1]));
+    visit(maze, visited, end[0], end[1]);
+    boolean found = start[0] == end[0] && start[1] == end[1];
+
+    while (!found && head < tail) {
+      long cell = queue.get(head++ & mask);
+      int x = (int) cell;
+      int y = (int) (cell >>> 32);
+
+      for (int move = 0; move < 4; move++) {
+        int nx = x + dx(move);
+        int ny = y + dy(move);
+        if (!maze.isOpen(nx, ny) || !visit(maze, visited, nx, ny)) {
+          continue;
+        }
+
+        long index = 2 * maze.tileWord(nx, ny) + ((nx & (MappedMaze.TILE - 1)) >>> 5);
+        towards.set(index, towards.get(index) | ((long) NodeGrid.opposite(move) << (2 * (nx & 31))));
+        if (nx == start[0] && ny == start[1]) {
+          found = true;
+          break;
+        }
+
+        if (tail - head == queue.length()) {
+          throw new IllegalStateException("Search frontier exceeded " + queue.length() + " pixels");
+        }
+        queue.set(tail++ & mask, pack(nx, ny));
+      }
+    }
+
+    if (!found) {
+      return -1;
+    }
+    System.out.println("Found Ending Node, expanded " + Long.toString(head) + " nodes");
+
+    long length = 1;
+    int x = start[0];
+    int y = start[1];
+    sink.accept(x, y);
+    while (x != end[0] || y != end[1]) {
+      long index = 2 * maze.tileWord(x, y) + ((x & (MappedMaze.TILE - 1)) >>> 5);
+      int move = (int) (towards.get(index) >>> (2 * (x & 31))) & 3;
+      x += dx(move);
+      y += dy(move);
+      sink.accept(x, y);
+      length++;
+    }
+
+    return length;
+  }
+
+  /**
+   * Marks a pixel visited.
+   * @return True when it had not been visited before.
+   */
+  private static boolean visit(MappedMaze maze, MappedLongArray visited, int x, int y) {
+    long index = maze.tileWord(x, y);
+    long word = visited.get(index);
+    if ((word & (1L << x)) != 0) {
+      return false;
+    }
+
+    visited.set(index, word | (1L << x));
+    return true;
+  }
+
+  private MappedLongArray scratch(long length) throws IOException {
+    return new MappedLongArray(Files.createTempFile(scratch, "search", ".bin"), length, true);
+  }
+
+  private static long pack(int x, int y) {
+    return ((long) y << 32) | x;
+  }
+
+  private static int dx(int move) {
+    return move == NodeGrid.RIGHT ? 1 : move == NodeGrid.LEFT ? -1 : 0;
+  }
+
+  private static int dy(int move) {
+    return move == NodeGrid.DOWN ? 1 : move == NodeGrid.UP ? -1 : 0;
+  }
+}
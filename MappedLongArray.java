@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A long[] of any length kept in a memory-mapped file rather than on the heap. The file is mapped
+ * in chunks of 1 GiB, the most one MappedByteBuffer can address comfortably, and the operating
+ * system pages the parts in use in and out, so the heap only holds the chunk handles. Files are
+ * extended sparsely, so a fresh array reads as zeros and untouched parts take no disk.
+ */
+public class MappedLongArray {
+
+  private static final int CHUNK_SHIFT = 27; // 2^27 longs, 1 GiB, per mapping
+  private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+  private final long length;
+  private final MappedByteBuffer[] chunks;
+
+  /**
+   * Maps an array onto a file, creating or extending the file as needed.
+   * @param file The backing file.
+   * @param length The number of longs.
+   * @param scratch Whether the file is deleted once mapped, leaving the array to live only as long
+   *   as the mapping.
+   * @throws IOException When the file cannot be opened or mapped.
+   */
+  public MappedLongArray(Path file, long length, boolean scratch) throws IOException {
+    this(create(file, length, scratch), length, FileChannel.MapMode.READ_WRITE);
+  }
+
+  private static FileChannel create(Path file, long length, boolean scratch) throws IOException {
+    checkLength(length);
+    return scratch
+        ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)
+        : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Maps an array onto the start of an existing file, which is never created or extended.
+   * @param file The backing file.
+   * @param length The number of longs, which the file must be long enough to hold.
+   * @param readOnly Whether to map the file read only, in which case set() throws.
+   * @return The array.
+   * @throws IOException When the file does not exist, is too short, or cannot be opened or mapped.
+   */
+  public static MappedLongArray open(Path file, long length, boolean readOnly) throws IOException {
+    checkLength(length);
+    FileChannel channel = readOnly
+        ? FileChannel.open(file, StandardOpenOption.READ)
+        : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (channel.size() < length * 8) {
+      channel.close();
+      throw new IOException(file + " is " + channel.size() + " bytes, too short for " + length + " longs");
+    }
+    return new MappedLongArray(channel, length, readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE);
+  }
+
+  /**
+   * Maps an array onto a channel, then closes the channel, which the mappings outlive.
+   */
+  private MappedLongArray(FileChannel channel, long length, FileChannel.MapMode mode) throws IOException {
+    try (channel) {
+      this.length = length;
+      this.chunks = new MappedByteBuffer[(int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT)];
+      for (int i = 0; i < chunks.length; i++) {
+        long first = (long) i << CHUNK_SHIFT;
+        long longs = Math.min(1L << CHUNK_SHIFT, length - first);
+        chunks[i] = channel.map(mode, first * 8, longs * 8);
+        chunks[i].order(ByteOrder.nativeOrder());
+      }
+    }
+  }
+
+  private static void checkLength(long length) {
+    if (length < 0) {
+      throw new IllegalArgumentException("Length must not be negative, was " + length);
+    }
+  }
+
+  /**
+   * Gets an element.
+   * @param index The index.
+   * @return The value.
+   */
+  public long get(long index) {
+    return chunks[(int) (index >>> CHUNK_SHIFT)].getLong(((int) index & CHUNK_MASK) << 3);
+  }
+
+  /**
+   * Sets an element.
+   * @param index The index.
+   * @param value The value.
+   */
+  public void set(long index, long value) {
+    chunks[(int) (index >>> CHUNK_SHIFT)].putLong(((int) index & CHUNK_MASK) << 3, value);
+  }
+
+  /**
+   * Gets the number of elements.
+   * @return The length.
+   */
+  public long length() {
+    return length;
+  }
+
+  /**
+   * Writes any changes through to the backing file.
+   */
+  public void flush() {
+    for (MappedByteBuffer chunk : chunks) {
+      chunk.force();
+    }
+  }
+}
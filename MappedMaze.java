@@ -0,0 +1,250 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * A binarized maze kept in a memory-mapped file, for mazes too large for a BufferedImage or a
+ * WallGrid on the heap. Pixels are stored one bit each, set where open, in 64 x 64 tiles of 64
+ * longs, so a pixel's neighbours almost always share its 512 byte tile and a search touches few
+ * pages at a time. The file starts with a header holding the size, so a maze written once can be
+ * opened again without decoding its image.
+ */
+public class MappedMaze {
+
+  static final int TILE_SHIFT = 6; // Tiles are 64 x 64 pixels
+  static final int TILE = 1 << TILE_SHIFT;
+  private static final int HEADER = 8; // Longs before the first tile
+  private static final long STRIP_BYTES = 16L << 20; // Rough size of one decoded strip
+
+  private final int width;
+  private final int height;
+  private final int tilesAcross;
+  private final MappedLongArray words;
+
+  private MappedMaze(MappedLongArray words, int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.tilesAcross = (width + TILE - 1) >>> TILE_SHIFT;
+    this.words = words;
+  }
+
+  /**
+   * Creates a maze file that is all wall, to be opened pixel by pixel.
+   * @param file The file to write, replaced if it exists.
+   * @param width The width in pixels.
+   * @param height The height in pixels.
+   * @return The maze.
+   * @throws IOException When the file cannot be created.
+   */
+  public static MappedMaze create(Path file, int width, int height) throws IOException {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Maze must be at least 1 x 1, was " + width + " x " + height);
+    }
+
+    Files.deleteIfExists(file);
+    MappedLongArray words = new MappedLongArray(file, wordCount(width, height), false);
+    words.set(0, width);
+    words.set(1, height);
+    return new MappedMaze(words, width, height);
+  }
+
+  /**
+   * Opens a maze file written earlier. The file is only ever read until it has been checked, so a
+   * missing or foreign file is left as it was.
+   * @param file The file.
+   * @return The maze.
+   * @throws IOException When the file cannot be read or is not a maze file.
+   */
+  public static MappedMaze open(Path file) throws IOException {
+    if (Files.size(file) < HEADER * 8) { // Checked first, since mapping the header must not change the file
+      throw new IOException("Not a maze file: " + file);
+    }
+
+    MappedLongArray header = MappedLongArray.open(file, HEADER, true);
+    long width = header.get(0);
+    long height = header.get(1);
+    if (width < 1 || height < 1 || width > Integer.MAX_VALUE || height > Integer.MAX_VALUE
+        || Files.size(file) < wordCount((int) width, (int) height) * 8) {
+      throw new IOException("Not a maze file: " + file);
+    }
+
+    return new MappedMaze(MappedLongArray.open(file, wordCount((int) width, (int) height), false), (int) width, (int) height);
+  }
+
+  /**
+   * Packs a binarized image file into a maze file a strip of rows at a time, decoding it with
+   * StripDecoder.readBands, so the heap holds one strip of the image, or one slab of rows for an
+   * interlaced or tiled one, whatever its size. As in WallGrid.fromImage, a pixel is open exactly
+   * where it is pure white.
+   * @param image The binarized image.
+   * @param file The maze file to write, replaced if it exists.
+   * @return The maze.
+   * @throws IOException When the image cannot be read or the file written.
+   */
+  public static MappedMaze fromImage(File image, Path file) throws IOException {
+    try (ImageInputStream input = ImageIO.createImageInputStream(image)) {
+      if (input == null) {
+        throw new IOException("Unable to open " + image);
+      }
+
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext()) {
+        throw new IOException("Unsupported image format: " + image);
+      }
+
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(input, false, true);
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        MappedMaze maze = create(file, width, height);
+        int[] row = new int[width];
+        StripDecoder.readBands(reader, STRIP_BYTES, 1, StripDecoder.SLAB_BYTES, (strip, y0) -> {
+          for (int y = 0; y < strip.getHeight(); y++) {
+            strip.getRGB(0, y, width, 1, row, 0, width);
+            maze.packRow(y0 + y, row);
+          }
+        });
+
+        maze.flush();
+        return maze;
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /**
+   * Copies a WallGrid into a maze file.
+   * @param grid The binarized maze.
+   * @param file The maze file to write, replaced if it exists.
+   * @return The maze.
+   * @throws IOException When the file cannot be written.
+   */
+  public static MappedMaze fromWallGrid(WallGrid grid, Path file) throws IOException {
+    MappedMaze maze = create(file, grid.getWidth(), grid.getHeight());
+    long[] row = new long[maze.tilesAcross];
+    for (int y = 0; y < grid.getHeight(); y++) {
+      for (int tile = 0; tile < maze.tilesAcross; tile++) {
+        row[tile] = ~grid.words()[y * grid.getStride() + tile];
+      }
+      maze.setRow(y, row);
+    }
+
+    maze.flush();
+    return maze;
+  }
+
+  /**
+   * Packs one row of ARGB pixels, pure white being open.
+   */
+  private void packRow(int y, int[] row) {
+    for (int tile = 0; tile < tilesAcross; tile++) {
+      long open = 0;
+      for (int x = tile << TILE_SHIFT, end = Math.min(width, x + TILE); x < end; x++) {
+        if (row[x] == -1) {
+          open |= 1L << x;
+        }
+      }
+      words.set(wordIndex(tile << TILE_SHIFT, y), open);
+    }
+  }
+
+  private static long wordCount(int width, int height) {
+    long tiles = (long) ((width + TILE - 1) >>> TILE_SHIFT) * ((height + TILE - 1) >>> TILE_SHIFT);
+    return HEADER + tiles * TILE;
+  }
+
+  /**
+   * Gets the index of the word holding a pixel, counted from the first tile.
+   */
+  long tileWord(int x, int y) {
+    long tile = (long) (y >>> TILE_SHIFT) * tilesAcross + (x >>> TILE_SHIFT);
+    return (tile << TILE_SHIFT) + (y & (TILE - 1));
+  }
+
+  private long wordIndex(int x, int y) {
+    return HEADER + tileWord(x, y);
+  }
+
+  /**
+   * Checks whether a pixel is open.
+   * @param x The x-coordinate.
+   * @param y The y-coordinate.
+   * @return True when the pixel is on the maze and open.
+   */
+  public boolean isOpen(int x, int y) {
+    if (x < 0 || y < 0 || x >= width || y >= height) {
+      return false;
+    }
+
+    return (words.get(wordIndex(x, y)) & (1L << x)) != 0;
+  }
+
+  /**
+   * Marks a pixel open.
+   * @param x The x-coordinate.
+   * @param y The y-coordinate.
+   */
+  public void setOpen(int x, int y) {
+    long index = wordIndex(x, y);
+    words.set(index, words.get(index) | (1L << x));
+  }
+
+  /**
+   * Marks a pixel as wall.
+   * @param x The x-coordinate.
+   * @param y The y-coordinate.
+   */
+  public void setWall(int x, int y) {
+    long index = wordIndex(x, y);
+    words.set(index, words.get(index) & ~(1L << x));
+  }
+
+  /**
+   * Writes a whole row a word at a time, for filling a maze faster than setOpen().
+   * @param y The row.
+   * @param open The row's pixels 64 to a word, set where open, with nothing set past the width.
+   */
+  void setRow(int y, long[] open) {
+    for (int tile = 0; tile < tilesAcross; tile++) {
+      words.set(wordIndex(tile << TILE_SHIFT, y), open[tile]);
+    }
+  }
+
+  /**
+   * Writes any changes through to the file.
+   */
+  public void flush() {
+    words.flush();
+  }
+
+  /**
+   * Gets the number of words of tiles, the length search state laid out like the maze needs.
+   * @return The word count.
+   */
+  long tileWords() {
+    return words.length() - HEADER;
+  }
+
+  /**
+   * Gets the width of the maze.
+   * @return The width in pixels.
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Gets the height of the maze.
+   * @return The height in pixels.
+   */
+  public int getHeight() {
+    return height;
+  }
+}
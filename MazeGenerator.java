@@ -0,0 +1,185 @@
+import java.util.SplittableRandom;
+
+/**
+ * Generates mazes from a seed, so the same settings and seed always give the same maze. A maze is
+ * a grid of square cells carved into a perfect maze, one route between any two cells, by a
+ * depth-first backtracker. Braiding then joins some dead ends to a neighbour to add loops, and
+ * rooms clear every wall inside a few rectangles of cells. The passages are a set number of pixels
+ * wide and the walls a set number thick, so the same layout can be drawn at any scale.
+ */
+public class MazeGenerator {
+
+  static final long MAX_CELLS = 1L << 26; // Keeps the cell arrays and the search over them in reach
+
+  private final int passage;
+  private final int wall;
+  private double braid;
+  private int rooms;
+
+  /**
+   * Creates a generator of perfect mazes.
+   * @param passage The width of the passages in pixels.
+   * @param wall The thickness of the walls in pixels.
+   */
+  public MazeGenerator(int passage, int wall) {
+    if (passage < 1 || wall < 1) {
+      throw new IllegalArgumentException("Passages and walls must be at least 1 pixel, were " + passage + " and " + wall);
+    }
+
+    this.passage = passage;
+    this.wall = wall;
+  }
+
+  /**
+   * Sets how many dead ends are opened into a neighbour, making loops.
+   * @param braid The chance each dead end is opened, 0 for a perfect maze up to 1 for none left.
+   */
+  public void setBraid(double braid) {
+    if (braid < 0 || braid > 1) {
+      throw new IllegalArgumentException("Braid must be between 0 and 1, was " + braid);
+    }
+    this.braid = braid;
+  }
+
+  /**
+   * Sets how many open rooms are cleared, each 2 - 6 cells on a side.
+   * @param rooms The number of rooms.
+   */
+  public void setRooms(int rooms) {
+    if (rooms < 0) {
+      throw new IllegalArgumentException("Rooms must not be negative, was " + rooms);
+    }
+    this.rooms = rooms;
+  }
+
+  /**
+   * Generates a maze.
+   * @param columns The number of cells across.
+   * @param rows The number of cells down.
+   * @param seed The seed.
+   * @return The maze, with its shortest route found.
+   */
+  public SyntheticMaze generate(int columns, int rows, long seed) {
+    if (columns < 1 || rows < 1 || (long) columns * rows > MAX_CELLS) {
+      throw new IllegalArgumentException("Mazes must have 1 to " + MAX_CELLS + " cells, was " + columns + " x " + rows);
+    }
+    if (wall + (long) Math.max(columns, rows) * (passage + wall) > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Maze would be more than " + Integer.MAX_VALUE + " pixels on a side");
+    }
+
+    SplittableRandom random = new SplittableRandom(seed);
+    byte[] joins = new byte[columns * rows];
+    carve(joins, columns, rows, random);
+    if (braid > 0) {
+      braid(joins, columns, rows, random);
+    }
+    for (int room = 0; room < rooms; room++) {
+      clearRoom(joins, columns, rows, random);
+    }
+
+    return new SyntheticMaze(joins, columns, rows, passage, wall, seed, braid == 0 && rooms == 0);
+  }
+
+  /**
+   * Carves a perfect maze from the top left cell, walking to a random unvisited neighbour and
+   * backing up from cells that have none, with an explicit stack so no maze is too deep.
+   */
+  private static void carve(byte[] joins, int columns, int rows, SplittableRandom random) {
+    long[] visited = new long[(joins.length + 63) >>> 6];
+    int[] stack = new int[joins.length];
+    int[] options = new int[4];
+    int top = 0;
+    stack[top++] = 0;
+    visited[0] = 1;
+
+    while (top > 0) {
+      int cell = stack[top - 1];
+      int count = 0;
+      for (int move = 0; move < 4; move++) {
+        int next = neighbour(cell, move, columns, rows);
+        if (next >= 0 && (visited[next >>> 6] & (1L << next)) == 0) {
+          options[count++] = next;
+        }
+      }
+      if (count == 0) {
+        top--;
+        continue;
+      }
+
+      int next = options[random.nextInt(count)];
+      join(joins, cell, next, columns);
+      visited[next >>> 6] |= 1L << next;
+      stack[top++] = next;
+    }
+  }
+
+  /**
+   * Opens each dead end into one of the neighbours it is walled off from, by chance.
+   */
+  private void braid(byte[] joins, int columns, int rows, SplittableRandom random) {
+    int[] options = new int[4];
+    for (int cell = 0; cell < joins.length; cell++) {
+      int count = 0;
+      int exits = 0;
+      for (int move = 0; move < 4; move++) {
+        int next = neighbour(cell, move, columns, rows);
+        if (next < 0) {
+          continue;
+        }
+        if (SyntheticMaze.isJoined(joins, cell, next, columns)) {
+          exits++;
+        } else {
+          options[count++] = next;
+        }
+      }
+
+      if (exits == 1 && count > 0 && random.nextDouble() < braid) {
+        join(joins, cell, options[random.nextInt(count)], columns);
+      }
+    }
+  }
+
+  /**
+   * Joins every pair of neighbouring cells inside a random rectangle.
+   */
+  private static void clearRoom(byte[] joins, int columns, int rows, SplittableRandom random) {
+    int width = Math.min(columns, 2 + random.nextInt(5));
+    int height = Math.min(rows, 2 + random.nextInt(5));
+    int left = random.nextInt(columns - width + 1);
+    int top = random.nextInt(rows - height + 1);
+
+    for (int y = top; y < top + height; y++) {
+      for (int x = left; x < left + width; x++) {
+        int cell = y * columns + x;
+        if (x + 1 < left + width) {
+          joins[cell] |= SyntheticMaze.RIGHT;
+        }
+        if (y + 1 < top + height) {
+          joins[cell] |= SyntheticMaze.DOWN;
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the cell a move leads to, with moves numbered like NodeGrid's.
+   * @return The cell, or -1 past the edge.
+   */
+  static int neighbour(int cell, int move, int columns, int rows) {
+    int x = cell % columns;
+    return switch (move) {
+      case NodeGrid.RIGHT -> x + 1 < columns ? cell + 1 : -1;
+      case NodeGrid.LEFT -> x > 0 ? cell - 1 : -1;
+      case NodeGrid.DOWN -> cell + columns < columns * rows ? cell + columns : -1;
+      default -> cell >= columns ? cell - columns : -1;
+    };
+  }
+
+  /**
+   * Removes the wall between two neighbouring cells.
+   */
+  private static void join(byte[] joins, int a, int b, int columns) {
+    int first = Math.min(a, b);
+    joins[first] |= Math.abs(a - b) == columns ? SyntheticMaze.DOWN : SyntheticMaze.RIGHT;
+  }
+}
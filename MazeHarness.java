@@ -0,0 +1,417 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs a fixed corpus of generated mazes through the same steps BatchPipeline takes, binarizing by
+ * contrast and solving with Jump Point Search at a pixel size of 1, and checks every path is exactly
+ * as long as the maze's own shortest path through its pixels. The largest mazes, too big for an image on the heap, are written
+ * straight into a MappedMaze and solved with MappedBreadthFirstSearch instead. Each maze's path
+ * length and peak heap are compared with a baselines file, so a change that breaks solving or makes
+ * it much hungrier shows up as a failure.
+ *
+ * Times are reported but not held to a baseline, since wall-clock times differ from machine to
+ * machine and run to run. The solve is also timed against a plain BreadthFirstSearch of the same
+ * prepared maze in the same run, each the fastest of a few runs, and with --check-timing that ratio
+ * is compared with its baseline.
+ *
+ * Run from Main with --harness first, see USAGE.
+ */
+public class MazeHarness {
+
+  static final String USAGE = String.join("\n",
+      "Usage: java Main --harness [options]",
+      "  --baselines file   Baselines to compare with (default harness-baselines.csv)",
+      "  --update           Record this run's measurements as the baselines of the mazes it solved",
+      "  --scale            Add the 8k image and the 16k and 64k mapped mazes, which take minutes",
+      "  --only text        Run only the mazes whose names contain text",
+      "  --check-timing     Also fail mazes whose solve took a larger share of BFS's time than their baseline",
+      "  --slack fraction   How far memory and the timing ratio may exceed their baselines (default 1)",
+      "  --scratch dir      Directory for mapped mazes and search files (default: temporary)");
+
+  private static final long RATIO_FLOOR = 25; // Percent of BFS's time over a baseline never counted as slower
+  private static final int TIMED_RUNS = 3; // Searches timed against each other, keeping each one's fastest
+  private static final long MIN_REFERENCE = 20; // Milliseconds BFS must take for the ratio to mean anything
+  private static final long MEMORY_FLOOR = 32; // Megabytes over a baseline never counted as more
+
+  /**
+   * One maze of the corpus: how it is generated and drawn.
+   */
+  static class Case {
+    final String name;
+    final int side; // Rough side length in pixels
+    final int passage;
+    final int wall;
+    final double braid;
+    final int rooms;
+    final double noise;
+    final int blur;
+    final long seed;
+    final boolean mapped; // Written into a MappedMaze instead of drawn
+
+    Case(String name, int side, int passage, int wall, double braid, int rooms, double noise, int blur, long seed, boolean mapped) {
+      this.name = name;
+      this.side = side;
+      this.passage = passage;
+      this.wall = wall;
+      this.braid = braid;
+      this.rooms = rooms;
+      this.noise = noise;
+      this.blur = blur;
+      this.seed = seed;
+      this.mapped = mapped;
+    }
+  }
+
+  private static final Case[] CORPUS = {
+      new Case("perfect-1k", 1024, 6, 4, 0, 0, 0, 0, 1, false),
+      new Case("braided-1k", 1024, 6, 4, 0.5, 0, 0, 0, 2, false),
+      new Case("rooms-1k", 1024, 6, 4, 0, 40, 0, 0, 3, false),
+      new Case("thin-walls-1k", 1024, 8, 1, 0, 0, 0, 0, 4, false),
+      new Case("thick-walls-1k", 1024, 4, 8, 0.2, 0, 0, 0, 5, false),
+      new Case("noisy-1k", 1024, 6, 4, 0.2, 10, 20, 0, 6, false),
+      new Case("blurred-1k", 1024, 8, 6, 0, 0, 8, 2, 7, false),
+      new Case("perfect-4k", 4096, 6, 4, 0, 0, 0, 0, 8, false),
+      new Case("mixed-4k", 4096, 8, 6, 0.3, 200, 12, 2, 9, false),
+  };
+
+  private static final Case[] SCALE = {
+      new Case("perfect-8k", 8192, 6, 4, 0, 0, 0, 0, 10, false),
+      new Case("perfect-16k-mapped", 16384, 10, 6, 0, 0, 0, 0, 11, true),
+      new Case("braided-16k-mapped", 16384, 10, 6, 0.5, 100, 0, 0, 12, true),
+      new Case("perfect-64k-mapped", 65536, 10, 6, 0, 0, 0, 0, 13, true),
+  };
+
+  private static final Case WARM_UP = new Case("warm-up", 512, 6, 4, 0.3, 5, 10, 1, 0, false);
+
+  private final Path scratch;
+  private final double slack;
+  private final boolean checkTiming;
+  private final Map<String, long[]> baselines; // Name to {length, solve % of BFS, peak MB}
+
+  /**
+   * Creates a harness.
+   * @param scratch The directory for mapped mazes and search files.
+   * @param slack How far memory and the timing ratio may exceed their baselines, as a fraction of them.
+   * @param checkTiming Whether a solve's time as a share of BFS's is held to its baseline.
+   * @param baselines The baselines, keyed by maze name.
+   */
+  public MazeHarness(Path scratch, double slack, boolean checkTiming, Map<String, long[]> baselines) {
+    if (slack < 0) {
+      throw new IllegalArgumentException("Slack must not be negative, was " + slack);
+    }
+
+    this.scratch = scratch;
+    this.slack = slack;
+    this.checkTiming = checkTiming;
+    this.baselines = baselines;
+  }
+
+  /**
+   * Parses the command line, runs the corpus and prints a line per maze.
+   * @param args The arguments, see USAGE.
+   * @return The exit status: 0 when every maze passed, 1 when any failed, 2 for bad arguments.
+   */
+  public static int runCommand(String[] args) {
+    try {
+      Path baselineFile = Paths.get("harness-baselines.csv");
+      boolean update = false;
+      boolean scale = false;
+      boolean checkTiming = false;
+      String only = "";
+      double slack = 1;
+      Path scratch = null;
+
+      for (int i = 0; i < args.length; i++) {
+        String option = args[i];
+        if (option.equals("--update") || option.equals("--scale") || option.equals("--check-timing")) {
+          update |= option.equals("--update");
+          scale |= option.equals("--scale");
+          checkTiming |= option.equals("--check-timing");
+          continue;
+        }
+        if (i + 1 >= args.length) {
+          throw new IllegalArgumentException("Missing value for " + option);
+        }
+
+        String value = args[++i];
+        switch (option) {
+          case "--baselines" -> baselineFile = Paths.get(value);
+          case "--only" -> only = value;
+          case "--slack" -> slack = parseDouble(value);
+          case "--scratch" -> scratch = Paths.get(value);
+          default -> throw new IllegalArgumentException("Unknown option " + option);
+        }
+      }
+
+      List<Case> cases = new ArrayList<>();
+      for (Case maze : CORPUS) {
+        cases.add(maze);
+      }
+      if (scale) {
+        for (Case maze : SCALE) {
+          cases.add(maze);
+        }
+      }
+      String filter = only;
+      cases.removeIf(maze -> !maze.name.contains(filter));
+      if (cases.isEmpty()) {
+        throw new IllegalArgumentException("No maze name contains " + only);
+      }
+
+      Map<String, long[]> baselines = readBaselines(baselineFile);
+      MazeHarness harness = new MazeHarness(scratch == null ? Files.createTempDirectory("maze-harness") : scratch, slack, checkTiming, baselines);
+      boolean passed = harness.run(cases);
+      if (update) {
+        writeBaselines(baselineFile, baselines);
+        System.out.println("Baselines written to " + baselineFile);
+      }
+      return passed ? 0 : 1;
+    } catch (IllegalArgumentException ex) {
+      System.err.println(ex.getMessage());
+      System.err.println(USAGE);
+      return 2;
+    } catch (IOException ex) {
+      System.err.println("Unable to set up the harness: " + ex.getMessage());
+      return 2;
+    }
+  }
+
+  /**
+   * Runs mazes one at a time, recording the measurements of those that pass as their baselines.
+   * @param cases The mazes.
+   * @return True when every maze passed.
+   */
+  public boolean run(List<Case> cases) {
+    try {
+      solve(WARM_UP, new ArrayList<>()); // Otherwise the first maze is timed while the JIT is still compiling
+    } catch (IOException ex) {
+      throw new IllegalStateException("Warm-up maze failed", ex);
+    }
+
+    int failed = 0;
+    for (Case maze : cases) {
+      List<String> problems = new ArrayList<>();
+      long[] measured = null;
+      try {
+        measured = solve(maze, problems);
+      } catch (IOException | RuntimeException ex) {
+        problems.add(ex.toString());
+      }
+
+      String summary = "";
+      if (measured != null) {
+        summary = String.format(Locale.ROOT, ": length %d, process %d ms, solve %d ms", measured[0], measured[3], measured[4]);
+        summary += measured[1] > 0 ? String.format(Locale.ROOT, " (%d%% of BFS)", measured[1]) : "";
+        summary += String.format(Locale.ROOT, ", peak %d MB", measured[2]);
+      }
+      if (measured != null && problems.isEmpty()) {
+        long[] baseline = baselines.get(maze.name);
+        if (baseline == null) {
+          summary += " (no baseline)";
+        } else {
+          compare(baseline, measured, problems);
+        }
+      }
+
+      if (problems.isEmpty()) {
+        baselines.put(maze.name, new long[] {measured[0], measured[1], measured[2]});
+        System.out.println("PASS " + maze.name + summary);
+      } else {
+        failed++;
+        System.out.println("FAIL " + maze.name + summary);
+        for (String problem : problems) {
+          System.out.println("  " + problem);
+        }
+      }
+    }
+
+    System.out.println((cases.size() - failed) + " of " + cases.size() + " mazes passed");
+    return failed == 0;
+  }
+
+  /**
+   * Generates, processes and solves one maze. Processing an image includes preparing its nodes, so
+   * the solve and the BFS it is timed against are the searches alone.
+   * @return {path length in pixels, solve % of BFS or 0 when not timed, peak heap MB, process ms,
+   *   solve ms}, or null with the problem added when the path is wrong.
+   */
+  private long[] solve(Case maze, List<String> problems) throws IOException {
+    MazeGenerator generator = new MazeGenerator(maze.passage, maze.wall);
+    generator.setBraid(maze.braid);
+    generator.setRooms(maze.rooms);
+    int cells = (maze.side - maze.wall) / (maze.passage + maze.wall);
+    SyntheticMaze synthetic = generator.generate(cells, cells, maze.seed);
+    BufferedImage image = maze.mapped ? null : synthetic.render(maze.noise, maze.blur);
+
+    System.gc();
+    resetPeakHeap();
+    SolutionPath path;
+    long began = System.nanoTime();
+    long processed;
+    PreparedMaze prepared = null;
+    if (maze.mapped) {
+      Path file = scratch.resolve(maze.name + ".maze");
+      MappedMaze mapped = synthetic.toMappedMaze(file);
+      processed = System.nanoTime();
+      SolutionPath.Builder builder = new SolutionPath.Builder(1);
+      new MappedBreadthFirstSearch(scratch).solve(mapped, synthetic.getStart(), synthetic.getEnd(), builder);
+      path = builder.build();
+      Files.deleteIfExists(file);
+    } else {
+      prepared = new PreparedMaze(new ImageProcessing().contrastGrid(image), 1);
+      processed = System.nanoTime();
+      MazeSolver solver = new MazeSolver(prepared, synthetic.getStart(), synthetic.getEnd());
+      solver.setStrategy(new JumpPointSearch());
+      path = solver.solvePath();
+    }
+    long solved = System.nanoTime();
+    long peak = peakHeap();
+
+    String problem = synthetic.verify(path);
+    if (problem != null) {
+      problems.add(problem);
+      return null;
+    }
+
+    long ratio = 0;
+    if (prepared != null) {
+      long fastest = solved - processed;
+      long reference = Long.MAX_VALUE;
+      for (int run = 0; run < TIMED_RUNS; run++) {
+        reference = Math.min(reference, timeSearch(prepared, synthetic, new BreadthFirstSearch()));
+        fastest = Math.min(fastest, timeSearch(prepared, synthetic, new JumpPointSearch()));
+      }
+      if (reference >= MIN_REFERENCE * 1_000_000) {
+        ratio = Math.max(1, Math.round(100.0 * fastest / reference));
+      }
+    }
+    return new long[] {Math.round(path.getLength()), ratio, peak >> 20, (processed - began) / 1_000_000, (solved - processed) / 1_000_000};
+  }
+
+  /**
+   * Times one search of a prepared maze between the synthetic maze's corners.
+   * @return The time in nanoseconds.
+   */
+  private static long timeSearch(PreparedMaze prepared, SyntheticMaze synthetic, SearchStrategy strategy) {
+    MazeSolver solver = new MazeSolver(prepared, synthetic.getStart(), synthetic.getEnd());
+    solver.setStrategy(strategy);
+    long began = System.nanoTime();
+    solver.solvePath();
+    return System.nanoTime() - began;
+  }
+
+  /**
+   * Compares a run with its baseline: the path must be the same length, and memory, and with
+   * --check-timing the solve's share of BFS's time, within the slack.
+   */
+  private void compare(long[] baseline, long[] measured, List<String> problems) {
+    if (measured[0] != baseline[0]) {
+      problems.add("Path length changed from " + baseline[0] + " to " + measured[0]);
+    }
+    if (checkTiming && baseline[1] > 0 && measured[1] > 0) {
+      long limit = Math.max((long) (baseline[1] * (1 + slack)), baseline[1] + RATIO_FLOOR);
+      if (measured[1] > limit) {
+        problems.add("Solving took " + measured[1] + "% of BFS's time, over the limit of " + limit + "% from a baseline of " + baseline[1] + "%");
+      }
+    }
+    long limit = Math.max((long) (baseline[2] * (1 + slack)), baseline[2] + MEMORY_FLOOR);
+    if (measured[2] > limit) {
+      problems.add("Peak heap took " + measured[2] + " MB, over the limit of " + limit + " MB from a baseline of " + baseline[2] + " MB");
+    }
+  }
+
+  private static void resetPeakHeap() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  /**
+   * Gets the peak heap since the last reset, as the sum of each heap pool's peak.
+   */
+  private static long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  /**
+   * Reads a baselines file of name,length,solvePercentOfBfs,peakMb lines, # starting a comment. A
+   * percentage of 0 means the ratio was not timed, as for mapped mazes and mazes BFS solves too
+   * quickly to time.
+   * @return The baselines, empty when the file does not exist.
+   */
+  static Map<String, long[]> readBaselines(Path file) throws IOException {
+    Map<String, long[]> baselines = new LinkedHashMap<>();
+    if (!Files.exists(file)) {
+      return baselines;
+    }
+
+    try (BufferedReader in = Files.newBufferedReader(file)) {
+      int number = 0;
+      for (String line = in.readLine(); line != null; line = in.readLine()) {
+        number++;
+        line = line.strip();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+
+        String[] fields = line.split(",");
+        if (fields.length != 4) {
+          throw new IllegalArgumentException("Line " + number + " of " + file + " should be name,length,solvePercentOfBfs,peakMb");
+        }
+        long[] values = new long[3];
+        for (int i = 0; i < 3; i++) {
+          values[i] = parseLong(fields[i + 1]);
+        }
+        baselines.put(fields[0].strip(), values);
+      }
+    }
+    return baselines;
+  }
+
+  static void writeBaselines(Path file, Map<String, long[]> baselines) throws IOException {
+    try (BufferedWriter out = Files.newBufferedWriter(file)) {
+      out.write("# name,length,solvePercentOfBfs,peakMb; written by java Main --harness --update\n");
+      for (Map.Entry<String, long[]> entry : baselines.entrySet()) {
+        long[] values = entry.getValue();
+        out.write(entry.getKey() + "," + values[0] + "," + values[1] + "," + values[2] + "\n");
+      }
+    }
+  }
+
+  private static long parseLong(String text) {
+    try {
+      return Long.parseLong(text.strip());
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Expected a number, was " + text.strip());
+    }
+  }
+
+  private static double parseDouble(String text) {
+    try {
+      return Double.parseDouble(text.strip());
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Expected a number, was " + text.strip());
+    }
+  }
+}
@@ -1,87 +1,17 @@
 import java.awt.image.*;
-import java.util.*;
 
 public class MazeSolver {
 
-  private class Node{
-    private final int x;
-    private final int y;
-    private final ArrayList<Node> neighbors = new ArrayList<>();
-    
-    /**
-     * Constructor for the Node class.
-     * @param x x-coordinate of the node.
-     * @param y y-coordinate of the node.
-     */
-    public Node(int x, int y) {
-      this.x = x;
-      this.y = y;
-    }
-
-    /**
-     * Constructor for the Node class.
-     * @param x x-coordinate of the node.
-     * @param y y-coordinate of the node.
-     */
-    public Node(int x, int y, Node neighbor) {
-      this.x = x;
-      this.y = y;
-      // addNeighbor(neighbor);
-    }
-
-    /**
-     * Adds a neighbor to the node.
-     * @param neighbor
-     */
-    public final void addNeighbor(Node neighbor) {
-      neighbors.add(neighbor);
-      neighbors.remove(null);
-    }
-
-    /**
-     * Removes a neighbor from the node.
-     * @param neighbor The neighbor to remove.
-     */
-    public void removeNeighbor(Node neighbor) {
-      if (neighbors.contains(neighbor)) {
-        neighbors.remove(neighbor);
-      }
-    }
-
-    /**
-     * Gets node's neighbors.
-     * @return
-     */
-    public ArrayList<Node> getNeighbors() {
-      return neighbors;
-    }
-
-    /**
-     * Gets the x-coordinate of the node.
-     * @return x-coordinate of the node.
-     */
-    public int getX() {
-      return x;
-    }
-
-    /**
-     * Gets the y-coordinate of the node.
-     * @return y-coordinate of the node.
-     */
-    public int getY() {
-      return y;
-    }
-
-  }
-  
-  private BufferedImage img;
-  private int pixelSize; 
+  private PreparedMaze maze; // Validated and labelled nodes, possibly shared with other solvers
+  private NodeGrid nodes; // The maze's nodes
   private int[] startingPoint;
   private int[] endingPoint;
-  private Node startingNode;
-  private Node endingNode;
-  private ArrayList<Node> nodes = new ArrayList<>(); 
-  
+  private SearchStrategy strategy = new BreadthFirstSearch();
+  private DeadEndFilling filling; // Prunes dead ends before solve() searches, null to search every node
+  private SolveMonitor monitor = SolveMonitor.NONE; // Watches the searches, may stop them
+  private int startingNode = -1;
+  private int endingNode = -1;
+
 
   /**
    * Constructor for the MazeSolver class.
@@ -91,229 +21,263 @@ public class MazeSolver {
    * @param endingPoint The ending point of the maze.
    */
   public MazeSolver(BufferedImage img, int pixelSize, int[] startingPoint, int[] endingPoint) {
-    this.img = img;
-    this.pixelSize = pixelSize;
-    this.startingPoint = startingPoint;
-    this.endingPoint = endingPoint;
-
-    generateNodes(); 
-    setNeighbors();
-    validateNodes(); 
-    findEndpoints();
+    this(WallGrid.fromImage(img), pixelSize, startingPoint, endingPoint);
   }
 
   /**
-   * Generates nodes starting from the starting point.
+   * Constructor for the MazeSolver class.
+   * @param grid The binarized maze to solve.
+   * @param pixelSize The size of the pixels when solving the maze.
+   * @param startingPoint The starting point of the maze.
+   * @param endingPoint The ending point of the maze.
    */
-  private void generateNodes() {
-    Node node = new Node(0, 0);
-    System.out.println("Generating Nodes");
-    node.addNeighbor(genXNodes(0, 0, node));
-    nodes.add(node);
-    
-    //Now that all nodes have been generated in the X direction, we can generate nodes in the Y direction
-    ArrayList<Node> horizontalNodes = new ArrayList<>(); 
-    for (Node n : nodes) {
-      horizontalNodes.add(n);
-    }
-    
-    for (Node n : horizontalNodes) {
-      n.addNeighbor(genYNodes(n.getX(), n.getY(), n));
-    }
+  public MazeSolver(WallGrid grid, int pixelSize, int[] startingPoint, int[] endingPoint) {
+    this(new PreparedMaze(grid, pixelSize), startingPoint, endingPoint);
   }
 
   /**
-   * Validates nodes by checking if they are on a wall.
+   * Constructor for the MazeSolver class, reusing a maze that has already been prepared so only the
+   * endpoints are left to find.
+   * @param maze The prepared maze.
+   * @param startingPoint The starting point of the maze.
+   * @param endingPoint The ending point of the maze.
    */
-  private void validateNodes() {
-
-    System.out.println("Validating Nodes");
-    // ArrayList<Node> validatedNodes = new ArrayList<>(); //Nodes that are valid
-    HashSet<Node> validatedNodes = new HashSet<>();
-    
-    for (Node node : nodes) { 
-      validatedNodes.add(node);
-    }
-
-    for (Node node : nodes) { //Check pixels within node to see if they contain a wall
-      boolean valid = true; 
-
-        for (int x = node.getX(); x < node.getX() + pixelSize; x++) {
-          for (int y = node.getY(); y < node.getY() + pixelSize; y++) {
-            System.out.println("Validating Node: " + Integer.toString(x) + " , " + Integer.toString(y));
-            if (img.getRGB(x, y) != -1) {
-              valid = false;
-              break;
-            }
-          }
-        }
-
-        if (!valid) { //If the node is not valid, remove it from other node's neighbors + remove it from the list of nodes
-          node.getNeighbors().forEach(neighbor -> neighbor.removeNeighbor(node));
-          validatedNodes.remove(node);
-        }        
-    }
+  public MazeSolver(PreparedMaze maze, int[] startingPoint, int[] endingPoint) {
+    this.maze = maze;
+    this.nodes = maze.getNodes();
+    this.startingPoint = startingPoint;
+    this.endingPoint = endingPoint;
 
-    nodes = new ArrayList<>();
-    nodes.addAll(validatedNodes); //Copy the validated nodes back to the original list of nodes
+    findEndpoints();
   }
 
   /**
-   * Finds the starting and ending nodes in the maze.
+   * Finds the starting and ending nodes in the maze, the open nodes nearest to each point that lie
+   * within pixelSize of it.
    */
   private void findEndpoints() {
     System.out.println("Finding Endpoints");
-    for (Node node : nodes) {
-      if (Math.abs(node.getX() - startingPoint[0]) <= pixelSize && Math.abs(node.getY() - startingPoint[1]) <= pixelSize) {
-        startingNode = node;
-      } 
+    startingNode = maze.nearestNode(startingPoint);
+    endingNode = maze.nearestNode(endingPoint);
 
-      if (Math.abs(node.getX() - endingPoint[0]) <= pixelSize && Math.abs(node.getY() - endingPoint[1]) <= pixelSize) {
-        endingNode = node;
-      }
-
-      if (startingNode != null && endingNode != null) {
-        break;
-      }
+    if (startingNode < 0 || endingNode < 0) {
+      throw new IllegalArgumentException("No open node near the " + (startingNode < 0 ? "starting" : "ending") + " point.");
     }
 
-    System.out.println("Found starting node: " + Integer.toString(startingNode.getX()) + " , " + Integer.toString(startingNode.getY()));
+    System.out.println("Found starting node: " + Integer.toString(getX(startingNode)) + " , " + Integer.toString(getY(startingNode)));
     System.out.println("Starting Point: " + Integer.toString(startingPoint[0]) + " , " + Integer.toString(startingPoint[1]));
-    System.out.println("Found ending node: " + Integer.toString(endingNode.getX()) + " , " + Integer.toString(endingNode.getY()));
+    System.out.println("Found ending node: " + Integer.toString(getX(endingNode)) + " , " + Integer.toString(getY(endingNode)));
     System.out.println("Ending Point: " + Integer.toString(endingPoint[0]) + " , " + Integer.toString(endingPoint[1]));
   }
 
   /**
-   * Called from UI to solve the maze.
-   * @return The path from the starting node to the ending node.
+   * Checks whether the starting and ending nodes lie in the same connected region, without searching.
+   * @return True when a path between them exists.
    */
-  public int[][] solve() {
-    Node[] prev = findPath();
-    ArrayList<Node> nodePath = reconstructPath(prev);
+  public boolean isReachable() {
+    if (!maze.connected(startingNode, endingNode)) {
+      System.out.println("Starting and ending nodes are in different regions");
+      return false;
+    }
+    return true;
+  }
 
-    if (nodePath != null) {
-      int[][] coordPath = new int[nodePath.size()][2];
+  /**
+   * Sets how solve() searches for the path. Breadth first search is used until this is called.
+   * @param strategy The search strategy.
+   */
+  public void setStrategy(SearchStrategy strategy) {
+    this.strategy = strategy;
+  }
 
-      for (int i = 0; i < nodePath.size(); i++) {
-        coordPath[i][0] = nodePath.get(i).getX();
-        coordPath[i][1] = nodePath.get(i).getY();
-      }
-      
-      return coordPath;
-    } 
+  /**
+   * Sets whether solve() fills dead ends before searching. Filling is off until this is called.
+   * @param filling The filler to prune with, or null to search every node. The caller still owns it
+   *   and closes it.
+   */
+  public void setDeadEndFilling(DeadEndFilling filling) {
+    this.filling = filling;
+  }
 
-    return null;
+  /**
+   * Sets the monitor the solves report their progress to and check for cancellation, so they can
+   * run off the calling thread and be stopped part way. A stopped solve throws a
+   * CancellationException.
+   * @param monitor The monitor.
+   */
+  public void setMonitor(SolveMonitor monitor) {
+    this.monitor = monitor;
   }
 
   /**
-   * Finds the path from the starting node to the ending node.
-   * @return The path from the starting node to the ending node.
+   * Called from UI to solve the maze.
+   * @return The path from the starting node to the ending node, or null when there is none.
    */
-  private Node[] findPath() {
-    Queue<Node> queue = new LinkedList<>(); //Queue to store nodes to visit
-    HashSet<Node> visited = new HashSet<>(); //Set to store visited nodes
-    queue.add(startingNode); 
-    visited.add(startingNode);
-    Node[] prev = new Node[nodes.size()]; //Array to store the previous node in the path
-    Arrays.fill(prev, null); //Fill the array with nulls
-
-    while (!queue.isEmpty()) { //Modified BFS to find the path
-      Node current = queue.remove();
-      for (Node neighbor : current.getNeighbors()) {
-        if (!visited.contains(neighbor)) {
-          System.out.println("Visiting: " + Integer.toString(neighbor.getX()) + " , " + Integer.toString(neighbor.getY()));
-          queue.add(neighbor);
-          visited.add(neighbor);
-          prev[nodes.indexOf(neighbor)] = current;
-          if (neighbor.equals(endingNode)) {
-            System.out.println("Found Ending Node");
-            return prev;
-          }
-        }
-      }
-    }
+  public int[][] solve() {
+    return maze.toCoordinates(search());
+  }
 
-    return prev;
+  /**
+   * Solves the maze like solve(), keeping only the path's turn points.
+   * @return The path from the starting node to the ending node, or null when there is none.
+   */
+  public SolutionPath solvePath() {
+    return maze.toPath(search());
   }
 
   /**
-   * Reconstructs the path from the starting node to the ending node.
-   * @param prev The array containing the previous node in the path.
-   * @return The path from the starting node to the ending node.
+   * Searches the whole grid, filling dead ends first when set to.
+   * @return The nodes on the path, or null when there is none.
    */
-  private ArrayList<Node> reconstructPath(Node[] prev) {
-    ArrayList<Node> path = new ArrayList<>(); 
-    for (Node at = endingNode; at != null; at = prev[nodes.indexOf(at)]) {
-      path.add(at);
+  private int[] search() {
+    if (!isReachable()) {
+      return null;
     }
 
-    Collections.reverse(path);
-
-    if (path.get(0) == startingNode) {
-      return path;
-    } else {
-      return null;
+    NodeGrid searched = nodes;
+    if (filling != null) {
+      monitor.phase("Filling dead ends");
+      searched = filling.fill(nodes, startingNode, endingNode);
     }
+    monitor.phase("Searching");
+    return strategy.search(searched, startingNode, endingNode, monitor);
+  }
+
+  /**
+   * Solves the maze coarse to fine. The path is first found with nodes 2^levels times pixelSize,
+   * then each finer level only searches a corridor around the path of the level above, widening
+   * the corridor when it does not connect. Levels where the endpoints have no open node, or with
+   * no path at all, are skipped, as the finer levels may still get through.
+   * @param levels The number of coarser levels above pixelSize.
+   * @return The path at pixelSize from the starting node to the ending node, or null when there is
+   *   none.
+   */
+  public int[][] solveCoarseToFine(int levels) {
+    return maze.toCoordinates(searchCoarseToFine(levels));
+  }
+
+  /**
+   * Solves the maze like solveCoarseToFine(), keeping only the path's turn points.
+   * @param levels The number of coarser levels above pixelSize.
+   * @return The path at pixelSize from the starting node to the ending node, or null when there is
+   *   none.
+   */
+  public SolutionPath solvePathCoarseToFine(int levels) {
+    return maze.toPath(searchCoarseToFine(levels));
   }
-  
+
   /**
-   * Generates nodes in the positive X direction.
-   * @param x The x-coordinate of the node.
-   * @param y The y-coordinate of the node.
-   * @param neighbor The neighbor of the node.
-   * @return The node generated.
+   * Runs the levels of solveCoarseToFine().
+   * @return The nodes on the path at pixelSize, or null when there is none.
    */
-  private Node genXNodes(int x, int y, Node neighbor) {
-      if (x + pixelSize < img.getWidth() - pixelSize) {
-        Node node = new Node(x + pixelSize, y);
-        node.addNeighbor(neighbor);
-        node.addNeighbor(genXNodes(x + pixelSize, y, node));
-        nodes.add(node);
-        return node; 
+  private int[] searchCoarseToFine(int levels) {
+    if (!isReachable()) { //Coarse nodes only cover fine ones, so no level can connect them either
+      return null;
+    }
+
+    NodeGrid[] pyramid = new NodeGrid[levels + 1];
+    pyramid[0] = nodes;
+    for (int level = 1; level <= levels; level++) {
+      pyramid[level] = pyramid[level - 1].coarsen();
+    }
+
+    NodeGrid coarse = null;
+    int[] path = null;
+
+    for (int level = levels; level >= 0; level--) {
+      NodeGrid fine = pyramid[level];
+      int start = level == 0 ? startingNode : PreparedMaze.nearestNode(fine, startingPoint);
+      int end = level == 0 ? endingNode : PreparedMaze.nearestNode(fine, endingPoint);
+      if (start < 0 || end < 0) {
+        path = null;
+        continue;
+      }
+
+      monitor.phase("Searching at pixel size " + Integer.toString(fine.getPixelSize()));
+      if (path == null) {
+        path = strategy.search(fine, start, end, monitor);
       } else {
-        return null;
+        path = refine(coarse, path, fine, start, end);
       }
+      coarse = fine;
+      System.out.println("Solved at pixel size " + Integer.toString(fine.getPixelSize()) + ": " + (path == null ? "no path" : Integer.toString(path.length) + " nodes"));
     }
 
+    return path;
+  }
+
   /**
-   * Generates nodes in the positive Y direction.
-   * @param x The x-coordinate of the node.
-   * @param y The y-coordinate of the node.
-   * @param neighbor The neighbor of the node.
-   * @return The node generated.
+   * Finds the path on a finer level inside a corridor around a coarse path, doubling the corridor's
+   * margin until it connects and searching the whole level as a last resort.
+   * @param coarse The level the path was found on.
+   * @param path The coarse path.
+   * @param fine The level to refine onto.
+   * @return The fine path, or null when there is none.
    */
-  private Node genYNodes(int x, int y, Node neighbor) {
-    if (y + pixelSize < img.getHeight() - pixelSize) {
-      Node node = new Node(x, y + pixelSize);
-      node.addNeighbor(neighbor);
-      node.addNeighbor(genYNodes(x, y + pixelSize, node));
-      nodes.add(node);
-      return node; 
-    } else {
-      return null;
+  private int[] refine(NodeGrid coarse, int[] path, NodeGrid fine, int start, int end) {
+    int size = coarse.getPixelSize();
+    int longestSide = Math.max(fine.getColumns(), fine.getRows()) * fine.getPixelSize();
+
+    for (int margin = size; margin < longestSide; margin *= 2) {
+      long[] corridor = new long[fine.getStride() * fine.getRows()];
+      for (int node : path) {
+        markBlock(fine, corridor, coarse.getX(node) - margin, coarse.getY(node) - margin, size + 2 * margin);
+      }
+      markBlock(fine, corridor, fine.getX(start), fine.getY(start), 1);
+      markBlock(fine, corridor, fine.getX(end), fine.getY(end), 1);
+
+      int[] refined = strategy.search(fine.restrict(corridor), start, end, monitor);
+      if (refined != null) {
+        return refined;
+      }
     }
+
+    return strategy.search(fine, start, end, monitor);
   }
 
-  private void setNeighbors() {
-    Node[] nodeArray = nodes.toArray(Node[]::new); //Converts the list of nodes to an array
-    int offsetIndex = (int) Math.floor(img.getHeight() / pixelSize) - 1; //The offset index to get the node to the right of the current node
+  /**
+   * Sets the corridor bits of the nodes whose top left pixel lies in a square.
+   */
+  private static void markBlock(NodeGrid level, long[] corridor, int x, int y, int side) {
+    int size = level.getPixelSize();
+    int firstColumn = Math.max(0, PreparedMaze.ceilDiv(x, size));
+    int lastColumn = Math.min(level.getColumns() - 1, Math.floorDiv(x + side - 1, size));
+    int firstRow = Math.max(0, PreparedMaze.ceilDiv(y, size));
+    int lastRow = Math.min(level.getRows() - 1, Math.floorDiv(y + side - 1, size));
+    if (firstColumn > lastColumn) {
+      return;
+    }
 
-    for (int i = 0; i < nodeArray.length; i++) {
-      Node node = nodeArray[i];
-      if (node.getY() != 0 && i + offsetIndex < nodeArray.length) {
-        node.addNeighbor(nodeArray[i + offsetIndex]);
-        nodeArray[i + offsetIndex].addNeighbor(node);
+    for (int row = firstRow; row <= lastRow; row++) {
+      int base = row * level.getStride();
+      for (int word = firstColumn >>> 6; word <= lastColumn >>> 6; word++) {
+        long mask = -1L;
+        if (word == firstColumn >>> 6) {
+          mask &= -1L << firstColumn;
+        }
+        if (word == lastColumn >>> 6) {
+          mask &= -1L >>> (63 - (lastColumn & 63));
+        }
+        corridor[base + word] |= mask;
       }
     }
-    
-    nodes = new ArrayList<>(Arrays.asList(nodeArray));
-    System.out.println("Set Neighbors: num of nodes: " + Integer.toString(nodes.size()));
   }
 
   /**
-   * Helper method to print the neighbors of each node.
+   * Gets the x-coordinate of a node's top left pixel.
+   * @param node The node index.
+   * @return The x-coordinate.
+   */
+  private int getX(int node) {
+    return nodes.getX(node);
+  }
+
+  /**
+   * Gets the y-coordinate of a node's top left pixel.
+   * @param node The node index.
+   * @return The y-coordinate.
    */
-  private void printNeighbors() {
-    nodes.forEach(node -> System.out.println("Node: " + Integer.toString(node.getX()) + " , " + Integer.toString(node.getY()) + " Neighbors " + Integer.toString(node.getNeighbors().size())));
+  private int getY(int node) {
+    return nodes.getY(node);
   }
 }
@@ -0,0 +1,359 @@
+/**
+ * The nodes MazeSolver searches: one every pixelSize pixels from the top left corner, open when
+ * their pixelSize block is free of walls. Nodes are indices, row * columns + column, and their
+ * neighbours are worked out from the index. Open nodes are packed one bit per node into long[]
+ * rows, each starting on a fresh word with its padding bits clear, so searches can scan a row a
+ * word at a time.
+ */
+public class NodeGrid {
+
+  // Moves between neighbouring nodes. Searches store move + 1 per node for the move that reached
+  // it, leaving 0 for nodes they have not reached.
+  public static final int RIGHT = 0;
+  public static final int LEFT = 1;
+  public static final int DOWN = 2;
+  public static final int UP = 3;
+  public static final byte UNREACHED = 0;
+
+  private final int pixelSize;
+  private final int columns;
+  private final int rows;
+  private final int stride; // Words per row
+  private final long[] open; // Set where a node is open
+
+  /**
+   * Lays out the nodes over a wall grid and validates each one.
+   * @param grid The binarized maze.
+   * @param pixelSize The side length of a node's block.
+   */
+  public NodeGrid(WallGrid grid, int pixelSize) {
+    this(grid, pixelSize, SolveMonitor.NONE);
+  }
+
+  /**
+   * Lays out and validates the nodes like NodeGrid(WallGrid, int), checking a monitor every row so
+   * a cancelled solve stops here too.
+   * @param grid The binarized maze.
+   * @param pixelSize The side length of a node's block.
+   * @param monitor Checked for cancellation.
+   * @throws java.util.concurrent.CancellationException When the monitor stops the solve.
+   */
+  public NodeGrid(WallGrid grid, int pixelSize, SolveMonitor monitor) {
+    this(grid.getWidth(), grid.getHeight(), pixelSize);
+
+    if (pixelSize == 1) { //Nodes are pixels, flip the wall bits a word at a time
+      long[] walls = grid.words();
+      long lastMask = -1L >>> (63 - ((columns - 1) & 63));
+      for (int row = 0; row < rows; row++) {
+        monitor.check();
+        for (int word = 0; word < stride; word++) {
+          open[row * stride + word] = ~walls[row * grid.getStride() + word];
+        }
+        open[row * stride + stride - 1] &= lastMask;
+      }
+      return;
+    }
+
+    for (int row = 0; row < rows; row++) {
+      monitor.check();
+      for (int column = 0; column < columns; column++) {
+        if (grid.isBlockOpen(column * pixelSize, row * pixelSize, pixelSize)) {
+          open[row * stride + (column >>> 6)] |= 1L << column;
+        }
+      }
+    }
+  }
+
+  /**
+   * Lays out the nodes over a distance transform and validates each one with a lookup, so grids of
+   * any number of pixel sizes can come from one transform.
+   * @param field The maze's clearance field.
+   * @param pixelSize The side length of a node's block.
+   */
+  public NodeGrid(ClearanceField field, int pixelSize) {
+    this(field.getWidth(), field.getHeight(), pixelSize);
+
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        if (field.fits(column * pixelSize, row * pixelSize, pixelSize)) {
+          open[row * stride + (column >>> 6)] |= 1L << column;
+        }
+      }
+    }
+  }
+
+  /**
+   * Lays out an empty grid over an image of the given size.
+   */
+  private NodeGrid(int width, int height, int pixelSize) {
+    this.pixelSize = pixelSize;
+    this.columns = Math.max(1, (width - 1) / pixelSize);
+    this.rows = Math.max(1, (height - 1) / pixelSize);
+    this.stride = (columns + 63) >>> 6;
+    this.open = new long[stride * rows];
+  }
+
+  /**
+   * Copies a grid, keeping only the open nodes that are also set in a mask.
+   */
+  private NodeGrid(NodeGrid base, long[] mask) {
+    this.pixelSize = base.pixelSize;
+    this.columns = base.columns;
+    this.rows = base.rows;
+    this.stride = base.stride;
+    this.open = new long[stride * rows];
+    for (int i = 0; i < open.length; i++) {
+      open[i] = base.open[i] & mask[i];
+    }
+  }
+
+  /**
+   * Builds the grid with nodes twice the size. A coarse node's block is exactly the blocks of four
+   * nodes here, so it is open when all four are, and rows are halved a word at a time.
+   * @return The coarser grid.
+   */
+  public NodeGrid coarsen() {
+    return new NodeGrid(this);
+  }
+
+  /**
+   * Halves a grid, see coarsen().
+   */
+  private NodeGrid(NodeGrid fine) {
+    this.pixelSize = fine.pixelSize * 2;
+    this.columns = Math.max(1, fine.columns / 2);
+    this.rows = Math.max(1, fine.rows / 2);
+    this.stride = (columns + 63) >>> 6;
+    this.open = new long[stride * rows];
+    if (fine.columns < 2 || fine.rows < 2) { //Too small to hold a single coarse node
+      return;
+    }
+
+    long lastMask = -1L >>> (63 - ((columns - 1) & 63));
+    for (int row = 0; row < rows; row++) {
+      int top = 2 * row * fine.stride;
+      int bottom = top + fine.stride;
+      for (int word = 0; word < stride; word++) {
+        long low = 2 * word < fine.stride ? fine.open[top + 2 * word] & fine.open[bottom + 2 * word] : 0;
+        long high = 2 * word + 1 < fine.stride ? fine.open[top + 2 * word + 1] & fine.open[bottom + 2 * word + 1] : 0;
+        open[row * stride + word] = evenBits(low & (low >>> 1)) | (evenBits(high & (high >>> 1)) << 32);
+      }
+      open[row * stride + stride - 1] &= lastMask;
+    }
+  }
+
+  /**
+   * Packs the even bits of a word into its low 32 bits.
+   */
+  private static long evenBits(long x) {
+    x &= 0x5555555555555555L;
+    x = (x | (x >>> 1)) & 0x3333333333333333L;
+    x = (x | (x >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+    x = (x | (x >>> 4)) & 0x00FF00FF00FF00FFL;
+    x = (x | (x >>> 8)) & 0x0000FFFF0000FFFFL;
+    return (x | (x >>> 16)) & 0x00000000FFFFFFFFL;
+  }
+
+  /**
+   * Narrows the grid to a region, for searching inside a corridor.
+   * @param mask Words laid out like words(), set where nodes may stay open.
+   * @return A grid with the same layout where only nodes open here and set in mask are open.
+   */
+  public NodeGrid restrict(long[] mask) {
+    return new NodeGrid(this, mask);
+  }
+
+  /**
+   * Gets the number of nodes, open or not.
+   * @return The number of nodes.
+   */
+  public int size() {
+    return columns * rows;
+  }
+
+  /**
+   * Gets the number of open nodes.
+   * @return The number of open nodes.
+   */
+  public int countOpen() {
+    int count = 0;
+    for (long word : open) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  /**
+   * Checks whether a node is open.
+   * @param node The node index.
+   * @return True when the node's block is free of walls.
+   */
+  public boolean isOpen(int node) {
+    int column = node % columns;
+    return (open[(node / columns) * stride + (column >>> 6)] & (1L << column)) != 0;
+  }
+
+  /**
+   * Checks whether a node is open by its position. Positions off the grid are not open.
+   * @param column The column.
+   * @param row The row.
+   * @return True when the node's block is free of walls.
+   */
+  public boolean isOpen(int column, int row) {
+    if (column < 0 || row < 0 || column >= columns || row >= rows) {
+      return false;
+    }
+
+    return (open[row * stride + (column >>> 6)] & (1L << column)) != 0;
+  }
+
+  /**
+   * Gets the neighbour of a node in a direction.
+   * @param node The node index.
+   * @param move RIGHT, LEFT, DOWN or UP.
+   * @return The neighbour's index, or -1 when it is off the grid or not open.
+   */
+  public int step(int node, int move) {
+    int next;
+    switch (move) {
+      case RIGHT -> next = node % columns + 1 < columns ? node + 1 : -1;
+      case LEFT -> next = node % columns > 0 ? node - 1 : -1;
+      case DOWN -> next = node + columns < columns * rows ? node + columns : -1;
+      default -> next = node >= columns ? node - columns : -1;
+    }
+    return next >= 0 && isOpen(next) ? next : -1;
+  }
+
+  /**
+   * Gets the move that undoes another.
+   * @param move RIGHT, LEFT, DOWN or UP.
+   * @return The opposite move.
+   */
+  public static int opposite(int move) {
+    return move ^ 1;
+  }
+
+  /**
+   * Gets the Manhattan distance between two nodes in steps.
+   * @param a The first node.
+   * @param b The second node.
+   * @return The distance.
+   */
+  public int distance(int a, int b) {
+    return Math.abs(a % columns - b % columns) + Math.abs(a / columns - b / columns);
+  }
+
+  /**
+   * Follows the moves a search recorded back from a node to where the search started.
+   * @param moves The move + 1 that reached each node, UNREACHED for the rest.
+   * @param origin The node the search started from.
+   * @param node The node to walk back from.
+   * @return The nodes from origin to node.
+   */
+  public int[] walkBack(byte[] moves, int origin, int node) {
+    int length = 1;
+    for (int at = node; at != origin; at = back(at, moves[at])) {
+      length++;
+    }
+
+    int[] path = new int[length];
+    int at = node;
+    for (int i = length - 1; i >= 0; i--) {
+      path[i] = at;
+      if (i > 0) {
+        at = back(at, moves[at]);
+      }
+    }
+
+    return path;
+  }
+
+  /**
+   * Steps back against a recorded move, without checking the node is open.
+   */
+  private int back(int node, byte move) {
+    switch (move - 1) {
+      case RIGHT -> { return node - 1; }
+      case LEFT -> { return node + 1; }
+      case DOWN -> { return node - columns; }
+      default -> { return node + columns; }
+    }
+  }
+
+  /**
+   * Gets the column of a node.
+   * @param node The node index.
+   * @return The column.
+   */
+  public int getColumn(int node) {
+    return node % columns;
+  }
+
+  /**
+   * Gets the row of a node.
+   * @param node The node index.
+   * @return The row.
+   */
+  public int getRow(int node) {
+    return node / columns;
+  }
+
+  /**
+   * Gets the x-coordinate of a node's top left pixel.
+   * @param node The node index.
+   * @return The x-coordinate.
+   */
+  public int getX(int node) {
+    return (node % columns) * pixelSize;
+  }
+
+  /**
+   * Gets the y-coordinate of a node's top left pixel.
+   * @param node The node index.
+   * @return The y-coordinate.
+   */
+  public int getY(int node) {
+    return (node / columns) * pixelSize;
+  }
+
+  /**
+   * Gets the number of words in each packed row.
+   * @return The row stride in words.
+   */
+  public int getStride() {
+    return stride;
+  }
+
+  /**
+   * Gets the packed rows, bit column & 63 of word row * stride + (column >> 6) for each node.
+   * Searches read these directly and must not write to them.
+   * @return The words.
+   */
+  long[] words() {
+    return open;
+  }
+
+  /**
+   * Gets the number of nodes in each row.
+   * @return The number of columns.
+   */
+  public int getColumns() {
+    return columns;
+  }
+
+  /**
+   * Gets the number of rows of nodes.
+   * @return The number of rows.
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Gets the side length of a node's block.
+   * @return The pixel size.
+   */
+  public int getPixelSize() {
+    return pixelSize;
+  }
+}
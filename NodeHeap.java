@@ -0,0 +1,94 @@
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of node indices keyed by long priorities, kept in two growable primitive
+ * arrays. A node can be pushed again with a better key; the search skips the stale entry when it
+ * surfaces.
+ */
+public class NodeHeap {
+
+  private long[] keys = new long[64];
+  private int[] nodes = new int[64];
+  private int size;
+
+  /**
+   * Adds a node.
+   * @param node The node index.
+   * @param key The priority, smallest first.
+   */
+  public void push(int node, long key) {
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      nodes = Arrays.copyOf(nodes, size * 2);
+    }
+
+    int at = size++;
+    while (at > 0) { //Sift up
+      int parent = (at - 1) >>> 1;
+      if (keys[parent] <= key) {
+        break;
+      }
+      keys[at] = keys[parent];
+      nodes[at] = nodes[parent];
+      at = parent;
+    }
+    keys[at] = key;
+    nodes[at] = node;
+  }
+
+  /**
+   * Gets the smallest key without removing it.
+   * @return The smallest key, or Long.MAX_VALUE when the heap is empty.
+   */
+  public long peekKey() {
+    return size == 0 ? Long.MAX_VALUE : keys[0];
+  }
+
+  /**
+   * Removes the node with the smallest key.
+   * @return The node index.
+   */
+  public int pop() {
+    int top = nodes[0];
+    size--;
+    long key = keys[size];
+    int node = nodes[size];
+
+    int at = 0;
+    while (true) { //Sift down
+      int child = 2 * at + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && keys[child + 1] < keys[child]) {
+        child++;
+      }
+      if (key <= keys[child]) {
+        break;
+      }
+      keys[at] = keys[child];
+      nodes[at] = nodes[child];
+      at = child;
+    }
+    keys[at] = key;
+    nodes[at] = node;
+
+    return top;
+  }
+
+  /**
+   * Checks whether the heap is empty.
+   * @return True when there is nothing left to pop.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Gets the number of entries, stale ones included.
+   * @return The size.
+   */
+  public int size() {
+    return size;
+  }
+}
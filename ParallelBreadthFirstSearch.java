@@ -0,0 +1,254 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Breadth first search that expands one layer at a time across a ForkJoinPool, for grids of many
+ * millions of nodes. Small frontiers are expanded top down: each chunk of the frontier claims its
+ * neighbours in a shared visited bitmap with compare-and-set and collects them in its own buffer.
+ * Once the frontier grows to a sizeable share of the unvisited nodes the search goes bottom up
+ * instead, with each chunk of the grid checking its unvisited nodes against a bitmap of the
+ * frontier, which needs no atomics because every chunk owns its words. Either way a node is
+ * reached in the layer of its distance from the start, so paths are as short as serial BFS's.
+ * The pool is the search's own, and close() shuts it down.
+ */
+public class ParallelBreadthFirstSearch implements SearchStrategy, AutoCloseable {
+
+  private static final int GRAIN = 1024; // Fewest frontier nodes worth handing to another thread
+  private static final int BOTTOM_UP = 14; // Go bottom up when the frontier is over 1/14 of the unvisited nodes
+  private static final int TOP_DOWN = 24; // Go back top down when it is under 1/24 of all nodes
+
+  private final ForkJoinPool pool; // Null when serial
+  private final int parallelism;
+
+  /**
+   * Creates a search running on its own pool.
+   * @param parallelism The number of threads.
+   */
+  public ParallelBreadthFirstSearch(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1, was " + parallelism);
+    }
+
+    this.parallelism = parallelism;
+    this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+  }
+
+  @Override
+  public int[] search(NodeGrid grid, int start, int end, SolveMonitor monitor) {
+    if (start == end) {
+      return new int[] {start};
+    }
+
+    int size = grid.size();
+    int words = (size + 63) >>> 6;
+    byte[] moves = new byte[size];
+    AtomicLongArray visited = new AtomicLongArray(words);
+    visited.set(start >>> 6, 1L << start);
+    moves[start] = 1; //Any mark will do, the start is never walked past
+
+    int[] frontier = {start};
+    long[] frontierBits = null; //Set instead of frontier while going bottom up
+    int frontierSize = 1;
+    long unvisited = grid.countOpen() - 1L;
+    int layers = 0;
+    long expanded = 0;
+    long[] open = null; //Open nodes by index, laid out the first time the search goes bottom up
+
+    while (frontierSize > 0 && (visited.get(end >>> 6) & (1L << end)) == 0) {
+      if (frontierBits == null && frontierSize > unvisited / BOTTOM_UP) {
+        frontierBits = toBits(frontier, frontierSize, words);
+        open = open == null ? openByIndex(grid, words) : open;
+      } else if (frontierBits != null && frontierSize < size / TOP_DOWN) {
+        frontier = toNodes(frontierBits, frontierSize);
+        frontierBits = null;
+      }
+
+      if (frontierBits == null) {
+        frontier = topDown(grid, moves, visited, frontier, frontierSize);
+        frontierSize = frontier.length;
+      } else {
+        frontierBits = bottomUp(grid, moves, visited, open, frontierBits);
+        frontierSize = 0;
+        for (long word : frontierBits) {
+          frontierSize += Long.bitCount(word);
+        }
+      }
+
+      expanded += frontierSize;
+      unvisited -= frontierSize;
+      layers++;
+      monitor.report(expanded, frontierSize);
+    }
+
+    if ((visited.get(end >>> 6) & (1L << end)) == 0) {
+      return null;
+    }
+
+    System.out.println("Found Ending Node, expanded " + Integer.toString(layers) + " layers");
+    return grid.walkBack(moves, start, end);
+  }
+
+  /**
+   * Expands the frontier by claiming each frontier node's unvisited neighbours.
+   * @return The next frontier.
+   */
+  private int[] topDown(NodeGrid grid, byte[] moves, AtomicLongArray visited, int[] frontier, int frontierSize) {
+    int grain = Math.max(GRAIN, frontierSize / (parallelism * 4));
+    int chunks = (frontierSize + grain - 1) / grain;
+    int[][] found = new int[chunks][]; //Each chunk's own buffer, no sharing while expanding
+
+    forEach(chunks, (first, last) -> {
+      for (int chunk = first; chunk < last; chunk++) {
+        int[] buffer = new int[64];
+        int count = 0;
+        for (int i = chunk * grain; i < Math.min(frontierSize, (chunk + 1) * grain); i++) {
+          for (int move = 0; move < 4; move++) {
+            int neighbor = grid.step(frontier[i], move);
+            if (neighbor >= 0 && claim(visited, neighbor)) {
+              moves[neighbor] = (byte) (move + 1);
+              if (count == buffer.length) {
+                buffer = Arrays.copyOf(buffer, count * 2);
+              }
+              buffer[count++] = neighbor;
+            }
+          }
+        }
+        found[chunk] = Arrays.copyOf(buffer, count);
+      }
+    });
+
+    int total = 0;
+    for (int[] buffer : found) {
+      total += buffer.length;
+    }
+    int[] next = new int[total];
+    int at = 0;
+    for (int[] buffer : found) {
+      System.arraycopy(buffer, 0, next, at, buffer.length);
+      at += buffer.length;
+    }
+
+    return next;
+  }
+
+  /**
+   * Expands the frontier by checking every unvisited open node for a neighbour in it.
+   * @return The next frontier as a bitmap.
+   */
+  private long[] bottomUp(NodeGrid grid, byte[] moves, AtomicLongArray visited, long[] open, long[] frontierBits) {
+    int columns = grid.getColumns();
+    int size = grid.size();
+    long[] next = new long[frontierBits.length];
+
+    forEach(frontierBits.length, (from, to) -> {
+      for (int word = from; word < to; word++) {
+        long seen = visited.get(word);
+        long candidates = open[word] & ~seen;
+        while (candidates != 0) {
+          int node = (word << 6) + Long.numberOfTrailingZeros(candidates);
+          candidates &= candidates - 1;
+
+          int column = node % columns;
+          int move = -1;
+          if (column > 0 && inFrontier(frontierBits, node - 1)) {
+            move = NodeGrid.RIGHT;
+          } else if (column + 1 < columns && inFrontier(frontierBits, node + 1)) {
+            move = NodeGrid.LEFT;
+          } else if (node >= columns && inFrontier(frontierBits, node - columns)) {
+            move = NodeGrid.DOWN;
+          } else if (node + columns < size && inFrontier(frontierBits, node + columns)) {
+            move = NodeGrid.UP;
+          }
+
+          if (move >= 0) {
+            moves[node] = (byte) (move + 1);
+            seen |= 1L << node;
+            next[word] |= 1L << node;
+          }
+        }
+        visited.set(word, seen); //Only this chunk writes this word while going bottom up
+      }
+    });
+
+    return next;
+  }
+
+  /**
+   * Lays out the open nodes one bit per node by index, so bottom up steps find unvisited nodes a
+   * word at a time.
+   */
+  private long[] openByIndex(NodeGrid grid, int words) {
+    long[] open = new long[words];
+    forEach(words, (from, to) -> {
+      for (int node = from << 6; node < Math.min(grid.size(), to << 6); node++) {
+        if (grid.isOpen(node)) {
+          open[node >>> 6] |= 1L << node;
+        }
+      }
+    });
+    return open;
+  }
+
+  /**
+   * Marks a node visited unless another thread got there first.
+   * @return True when this call marked it.
+   */
+  private static boolean claim(AtomicLongArray visited, int node) {
+    int word = node >>> 6;
+    long bit = 1L << node;
+    long seen = visited.get(word);
+    while ((seen & bit) == 0) {
+      long witness = visited.compareAndExchange(word, seen, seen | bit);
+      if (witness == seen) {
+        return true;
+      }
+      seen = witness;
+    }
+    return false;
+  }
+
+  private static boolean inFrontier(long[] frontierBits, int node) {
+    return (frontierBits[node >>> 6] & (1L << node)) != 0;
+  }
+
+  private static long[] toBits(int[] frontier, int frontierSize, int words) {
+    long[] bits = new long[words];
+    for (int i = 0; i < frontierSize; i++) {
+      bits[frontier[i] >>> 6] |= 1L << frontier[i];
+    }
+    return bits;
+  }
+
+  private static int[] toNodes(long[] bits, int count) {
+    int[] nodes = new int[count];
+    int at = 0;
+    for (int word = 0; word < bits.length; word++) {
+      for (long rest = bits[word]; rest != 0; rest &= rest - 1) {
+        nodes[at++] = (word << 6) + Long.numberOfTrailingZeros(rest);
+      }
+    }
+    return nodes;
+  }
+
+  /**
+   * Runs work over 0 - count, split into ranges across the pool.
+   */
+  private void forEach(int count, GreyPlaneEngine.RowRange work) {
+    if (pool == null || count < 2) {
+      work.run(0, count);
+    } else {
+      pool.invoke(new GreyPlaneEngine.BandTask(work, 0, count, Math.max(1, count / (parallelism * 4))));
+    }
+  }
+
+  /**
+   * Shuts down the search's pool once any running search finishes. The search cannot be used after.
+   */
+  @Override
+  public void close() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+}
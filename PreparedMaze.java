@@ -0,0 +1,151 @@
+/**
+ * A maze made ready for any number of queries: its validated nodes and their connected regions,
+ * built once. Nothing in it changes after construction, so one instance can be shared between
+ * threads and between MazeSolvers, leaving each query only its endpoints and its search.
+ */
+public final class PreparedMaze {
+
+  private final NodeGrid nodes; // Nodes every pixelSize pixels and which of them are open
+  private final ComponentLabels components; // Connected region of each open node
+
+  /**
+   * Lays out, validates and labels the nodes of a maze.
+   * @param grid The binarized maze.
+   * @param pixelSize The size of the pixels when solving the maze.
+   */
+  public PreparedMaze(WallGrid grid, int pixelSize) {
+    this(grid, pixelSize, SolveMonitor.NONE);
+  }
+
+  /**
+   * Lays out, validates and labels the nodes of a maze, checking a monitor as it goes so a
+   * cancelled solve stops while still preparing.
+   * @param grid The binarized maze.
+   * @param pixelSize The size of the pixels when solving the maze.
+   * @param monitor Checked for cancellation and running out of time.
+   * @throws java.util.concurrent.CancellationException When the monitor stops the solve.
+   */
+  public PreparedMaze(WallGrid grid, int pixelSize, SolveMonitor monitor) {
+    System.out.println("Generating Nodes");
+    this.nodes = new NodeGrid(grid, pixelSize, monitor);
+    System.out.println("Validated Nodes: num of nodes: " + Integer.toString(nodes.countOpen()));
+    this.components = new ComponentLabels(nodes, monitor);
+  }
+
+  /**
+   * Lays out, validates and labels the nodes of a maze from its distance transform, which can be
+   * shared by mazes prepared at different pixel sizes.
+   * @param field The maze's clearance field.
+   * @param pixelSize The size of the pixels when solving the maze.
+   */
+  public PreparedMaze(ClearanceField field, int pixelSize) {
+    System.out.println("Generating Nodes");
+    this.nodes = new NodeGrid(field, pixelSize);
+    System.out.println("Validated Nodes: num of nodes: " + Integer.toString(nodes.countOpen()));
+    this.components = new ComponentLabels(nodes);
+  }
+
+  /**
+   * Finds the open node nearest to a point among those within pixelSize of it on both axes.
+   * @param point The point.
+   * @return The node index, or -1 when there is none.
+   */
+  public int nearestNode(int[] point) {
+    return nearestNode(nodes, point);
+  }
+
+  /**
+   * Checks whether a path can join two nodes, in O(1).
+   * @param a The first node.
+   * @param b The second node.
+   * @return True when both are open and in the same connected region.
+   */
+  public boolean connected(int a, int b) {
+    return components.connected(a, b);
+  }
+
+  /**
+   * Converts a path of node indices to the coordinates of the nodes' top left pixels.
+   * @param path The nodes on the path, or null.
+   * @return The coordinates, or null when there is no path.
+   */
+  public int[][] toCoordinates(int[] path) {
+    if (path == null) {
+      return null;
+    }
+
+    int[][] points = new int[path.length][2];
+    for (int i = 0; i < path.length; i++) {
+      points[i][0] = nodes.getX(path[i]);
+      points[i][1] = nodes.getY(path[i]);
+    }
+
+    return points;
+  }
+
+  /**
+   * Converts a path of node indices to its turn points, see SolutionPath.
+   * @param path The nodes on the path, or null.
+   * @return The path, or null when there is no path.
+   */
+  public SolutionPath toPath(int[] path) {
+    return SolutionPath.fromNodes(nodes, path);
+  }
+
+  /**
+   * Gets the validated nodes.
+   * @return The node grid, which must not be written to.
+   */
+  public NodeGrid getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Gets the connected regions of the open nodes.
+   * @return The labels.
+   */
+  public ComponentLabels getComponents() {
+    return components;
+  }
+
+  /**
+   * Gets the side length of a node's block.
+   * @return The pixel size.
+   */
+  public int getPixelSize() {
+    return nodes.getPixelSize();
+  }
+
+  /**
+   * Finds the open node nearest to a point among those within a node's size of it on both axes.
+   * @param level The nodes to pick from.
+   * @param point The point.
+   * @return The node index, or -1 when there is none.
+   */
+  static int nearestNode(NodeGrid level, int[] point) {
+    int size = level.getPixelSize();
+    int best = -1;
+    long bestDistance = Long.MAX_VALUE;
+
+    for (int row = Math.max(0, ceilDiv(point[1] - size, size)); row <= Math.min(level.getRows() - 1, Math.floorDiv(point[1] + size, size)); row++) {
+      for (int column = Math.max(0, ceilDiv(point[0] - size, size)); column <= Math.min(level.getColumns() - 1, Math.floorDiv(point[0] + size, size)); column++) {
+        int node = row * level.getColumns() + column;
+        long dx = level.getX(node) - point[0];
+        long dy = level.getY(node) - point[1];
+        if (level.isOpen(node) && dx * dx + dy * dy < bestDistance) {
+          best = node;
+          bestDistance = dx * dx + dy * dy;
+        }
+      }
+    }
+
+    return best;
+  }
+
+  /**
+   * Divides a coordinate by a node size, rounding up.
+   */
+  static int ceilDiv(int value, int size) {
+    return -Math.floorDiv(-value, size);
+  }
+}
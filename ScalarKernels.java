@@ -0,0 +1,50 @@
+/**
+ * Plain Java implementation of the filter rows, used whenever the vector backend is unavailable.
+ */
+public class ScalarKernels implements KernelBackend {
+
+  @Override
+  public void blur3Row(int[] src, int row, int w, int[] dest, int outW) {
+    int r0 = row;
+    int r1 = r0 + w;
+    int r2 = r1 + w;
+    for (int x = 0; x < outW; x++) {
+      int sum = 4 * src[r1 + x + 1]
+          + 2 * (src[r0 + x + 1] + src[r2 + x + 1] + src[r1 + x] + src[r1 + x + 2])
+          + src[r0 + x] + src[r0 + x + 2] + src[r2 + x] + src[r2 + x + 2];
+      dest[x] = sum / 16;
+    }
+  }
+
+  @Override
+  public void blur5Row(int[] src, int row, int w, int[] dest, int outW) {
+    int r0 = row;
+    int r1 = r0 + w;
+    int r2 = r1 + w;
+    int r3 = r2 + w;
+    int r4 = r3 + w;
+    for (int x = 0; x < outW; x++) {
+      int sum = 41 * src[r2 + x + 2]
+          + 26 * (src[r2 + x + 1] + src[r1 + x + 2] + src[r2 + x + 3] + src[r3 + x + 2])
+          + 16 * (src[r1 + x + 1] + src[r1 + x + 3] + src[r3 + x + 1] + src[r3 + x + 3])
+          + 7 * (src[r2 + x] + src[r0 + x + 2] + src[r2 + x + 4] + src[r4 + x + 2])
+          + 4 * (src[r1 + x] + src[r0 + x + 1] + src[r1 + x + 4] + src[r4 + x + 1]
+              + src[r3 + x] + src[r0 + x + 3] + src[r3 + x + 4] + src[r4 + x + 3])
+          + src[r0 + x] + src[r0 + x + 4] + src[r4 + x] + src[r4 + x + 4];
+      dest[x] = sum / 273;
+    }
+  }
+
+  @Override
+  public void gradientRow(int[] src, int mid, int w, int[] dest) {
+    int up = mid - w;
+    int down = mid + w;
+    for (int x = 1; x < w - 1; x++) {
+      int horiz = ((src[up + x - 1] + src[up + x] + src[up + x + 1])
+          - (src[down + x - 1] + src[down + x] + src[down + x + 1])) / 6;
+      int vert = ((src[up + x - 1] + src[mid + x - 1] + src[down + x - 1])
+          - (src[up + x + 1] + src[mid + x + 1] + src[down + x + 1])) / 6;
+      dest[mid + x] = horiz * horiz + vert * vert;
+    }
+  }
+}
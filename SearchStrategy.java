@@ -0,0 +1,29 @@
+/**
+ * A way of finding a shortest path between two open nodes of a NodeGrid. Every step costs the
+ * same, so all strategies return paths with the same number of nodes; they differ in how much of
+ * the grid they expand to find one. Implementations keep no state between searches.
+ */
+public interface SearchStrategy {
+
+  /**
+   * Finds a shortest path, reporting to a monitor as it goes.
+   * @param grid The nodes to search.
+   * @param start The starting node.
+   * @param end The ending node.
+   * @param monitor Told how far the search has got, and may stop it.
+   * @return The nodes from start to end, or null when end cannot be reached.
+   * @throws java.util.concurrent.CancellationException When the monitor stops the search.
+   */
+  int[] search(NodeGrid grid, int start, int end, SolveMonitor monitor);
+
+  /**
+   * Finds a shortest path.
+   * @param grid The nodes to search.
+   * @param start The starting node.
+   * @param end The ending node.
+   * @return The nodes from start to end, or null when end cannot be reached.
+   */
+  default int[] search(NodeGrid grid, int start, int end) {
+    return search(grid, start, end, SolveMonitor.NONE);
+  }
+}
@@ -0,0 +1,296 @@
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A path kept as its waypoints in one int[] of x, y pairs instead of an int[2] per node. Built from
+ * a search, the waypoints are the two ends and every turn, and each straight run between them stands
+ * for the nodes along it, so a path of a million nodes through a maze with a few thousand turns
+ * holds a few thousand points. simplify() drops the waypoints that can be skipped by a straight line
+ * the nodes fit along. Points are the top left pixels of the nodes, like MazeSolver's coordinates.
+ */
+public final class SolutionPath {
+
+  private final int[] points; // x0, y0, x1, y1, ...
+  private final int pixelSize; // Side length of the nodes the path runs through
+
+  private SolutionPath(int[] points, int pixelSize) {
+    this.points = points;
+    this.pixelSize = pixelSize;
+  }
+
+  /**
+   * Collects a path one node at a time, keeping only where it turns. It can take the pixels
+   * MappedBreadthFirstSearch streams out as well as nodes from a NodeGrid.
+   */
+  public static class Builder implements MappedBreadthFirstSearch.PathSink {
+
+    private final int pixelSize;
+    private int[] points = new int[16];
+    private int count; // Ints used in points
+
+    /**
+     * Starts an empty path.
+     * @param pixelSize The side length of the nodes it runs through.
+     */
+    public Builder(int pixelSize) {
+      this.pixelSize = pixelSize;
+    }
+
+    @Override
+    public void accept(int x, int y) {
+      if (count >= 4) {
+        int lastX = points[count - 2];
+        int lastY = points[count - 1];
+        if (Integer.signum(lastX - points[count - 4]) == Integer.signum(x - lastX)
+            && Integer.signum(lastY - points[count - 3]) == Integer.signum(y - lastY)) { //Still going straight
+          points[count - 2] = x;
+          points[count - 1] = y;
+          return;
+        }
+      }
+
+      if (count == points.length) {
+        points = Arrays.copyOf(points, count * 2);
+      }
+      points[count++] = x;
+      points[count++] = y;
+    }
+
+    /**
+     * Finishes the path.
+     * @return The path, or null when no node was added.
+     */
+    public SolutionPath build() {
+      return count == 0 ? null : new SolutionPath(Arrays.copyOf(points, count), pixelSize);
+    }
+  }
+
+  /**
+   * Builds a path from the nodes a search returned.
+   * @param grid The nodes searched.
+   * @param path The node indices from start to end, or null.
+   * @return The path, or null when there is none.
+   */
+  public static SolutionPath fromNodes(NodeGrid grid, int[] path) {
+    if (path == null) {
+      return null;
+    }
+
+    Builder builder = new Builder(grid.getPixelSize());
+    for (int node : path) {
+      builder.accept(grid.getX(node), grid.getY(node));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Drops waypoints wherever a straight line from an earlier waypoint to a later one stays clear,
+   * going as far along the path as it can from each waypoint kept. A line is clear when a node's
+   * block fits at every pixel of its 4-connected Bresenham line, so it never cuts a corner between
+   * two walls that only touch diagonally.
+   * @param walls The maze the path was found in.
+   * @return The shorter path, with the same ends.
+   */
+  public SolutionPath simplify(WallGrid walls) {
+    int count = getPointCount();
+    int[] kept = new int[points.length];
+    kept[0] = points[0];
+    kept[1] = points[1];
+    int used = 2;
+
+    for (int anchor = 0; anchor < count - 1;) {
+      int reach = anchor + 1;
+      while (reach + 1 < count && isClear(walls, anchor, reach + 1)) {
+        reach++;
+      }
+      kept[used++] = points[2 * reach];
+      kept[used++] = points[2 * reach + 1];
+      anchor = reach;
+    }
+
+    return new SolutionPath(Arrays.copyOf(kept, used), pixelSize);
+  }
+
+  /**
+   * Checks the line between two waypoints, see simplify().
+   */
+  private boolean isClear(WallGrid walls, int from, int to) {
+    int x0 = points[2 * from];
+    int y0 = points[2 * from + 1];
+    int x1 = points[2 * to];
+    int y1 = points[2 * to + 1];
+    long dx = Math.abs(x1 - x0);
+    long dy = Math.abs(y1 - y0);
+    int x = x0;
+    int y = y0;
+
+    for (long ix = 0, iy = 0; ix < dx || iy < dy;) {
+      if (crossesColumn(ix, iy, dx, dy)) {
+        x += Integer.signum(x1 - x0);
+        ix++;
+      } else {
+        y += Integer.signum(y1 - y0);
+        iy++;
+      }
+      if (!walls.isBlockOpen(x, y, pixelSize)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decides the next step of a 4-connected Bresenham line with dx, dy pixels to cover, ix, iy of
+   * them taken: along x when the exact line leaves the current pixel through its side.
+   */
+  private static boolean crossesColumn(long ix, long iy, long dx, long dy) {
+    return (1 + 2 * ix) * dy < (1 + 2 * iy) * dx;
+  }
+
+  /**
+   * Walks the path node by node. Straight runs step a node at a time; diagonal lines left by
+   * simplify() step a pixel at a time along their Bresenham line.
+   * @param sink Receives each node's top left pixel, from start to end.
+   */
+  public void forEachNode(MappedBreadthFirstSearch.PathSink sink) {
+    sink.accept(points[0], points[1]);
+    for (int i = 2; i < points.length; i += 2) {
+      int x0 = points[i - 2];
+      int y0 = points[i - 1];
+      int x1 = points[i];
+      int y1 = points[i + 1];
+      if (x0 != x1 && y0 != y1) {
+        long dx = Math.abs(x1 - x0);
+        long dy = Math.abs(y1 - y0);
+        int x = x0;
+        int y = y0;
+        for (long ix = 0, iy = 0; ix < dx || iy < dy;) {
+          if (crossesColumn(ix, iy, dx, dy)) {
+            x += Integer.signum(x1 - x0);
+            ix++;
+          } else {
+            y += Integer.signum(y1 - y0);
+            iy++;
+          }
+          sink.accept(x, y);
+        }
+        continue;
+      }
+
+      int steps = (Math.abs(x1 - x0) + Math.abs(y1 - y0)) / pixelSize;
+      for (int step = 1; step <= steps; step++) {
+        sink.accept(x0 + Integer.signum(x1 - x0) * step * pixelSize, y0 + Integer.signum(y1 - y0) * step * pixelSize);
+      }
+    }
+  }
+
+  /**
+   * Expands the path to one coordinate per node, in the form MazeSolver.solve() returns.
+   * @return The coordinates.
+   */
+  public int[][] toCoordinates() {
+    List<int[]> coordinates = new ArrayList<>();
+    forEachNode((x, y) -> coordinates.add(new int[] {x, y}));
+    return coordinates.toArray(new int[0][]);
+  }
+
+  /**
+   * Draws the path as a 3 x 3 block per node in the graphics' current colour, a straight run at a
+   * time, with any diagonal lines left by simplify() drawn 3 pixels wide.
+   * @param g Where to draw.
+   */
+  public void draw(Graphics2D g) {
+    g.setStroke(new BasicStroke(3));
+    g.fillRect(points[0], points[1], 3, 3);
+    for (int i = 2; i < points.length; i += 2) {
+      int x0 = points[i - 2];
+      int y0 = points[i - 1];
+      int x1 = points[i];
+      int y1 = points[i + 1];
+      if (x0 == x1 || y0 == y1) {
+        g.fillRect(Math.min(x0, x1), Math.min(y0, y1), Math.abs(x1 - x0) + 3, Math.abs(y1 - y0) + 3);
+      } else {
+        g.drawLine(x0 + 1, y0 + 1, x1 + 1, y1 + 1);
+      }
+    }
+  }
+
+  /**
+   * Writes the waypoints as lines of "x,y", one at a time.
+   * @param out Where to write them.
+   * @throws IOException When writing fails.
+   */
+  public void write(Writer out) throws IOException {
+    for (int i = 0; i < points.length; i += 2) {
+      out.write(Integer.toString(points[i]));
+      out.write(',');
+      out.write(Integer.toString(points[i + 1]));
+      out.write('\n');
+    }
+  }
+
+  /**
+   * Writes the waypoints to a file, see write(Writer).
+   * @param file The file, replaced if it exists.
+   * @throws IOException When the file cannot be written.
+   */
+  public void write(Path file) throws IOException {
+    try (BufferedWriter out = Files.newBufferedWriter(file)) {
+      write(out);
+    }
+  }
+
+  /**
+   * Gets the length of the path along its waypoints.
+   * @return The length in pixels.
+   */
+  public double getLength() {
+    double length = 0;
+    for (int i = 2; i < points.length; i += 2) {
+      length += Math.hypot(points[i] - points[i - 2], points[i + 1] - points[i - 1]);
+    }
+    return length;
+  }
+
+  /**
+   * Gets the number of waypoints.
+   * @return The count.
+   */
+  public int getPointCount() {
+    return points.length / 2;
+  }
+
+  /**
+   * Gets the x-coordinate of a waypoint.
+   * @param i The waypoint, from 0 at the start.
+   * @return The x-coordinate.
+   */
+  public int getX(int i) {
+    return points[2 * i];
+  }
+
+  /**
+   * Gets the y-coordinate of a waypoint.
+   * @param i The waypoint, from 0 at the start.
+   * @return The y-coordinate.
+   */
+  public int getY(int i) {
+    return points[2 * i + 1];
+  }
+
+  /**
+   * Gets the side length of the nodes the path runs through.
+   * @return The pixel size.
+   */
+  public int getPixelSize() {
+    return pixelSize;
+  }
+}
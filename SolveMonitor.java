@@ -0,0 +1,123 @@
+import java.util.concurrent.CancellationException;
+
+/**
+ * Lets a solve running on another thread be watched and stopped. Searches report how many nodes
+ * they have expanded and how large their frontier is as they go; every few thousand expansions the
+ * monitor checks whether it has been cancelled or has run out of time, throwing a
+ * CancellationException out of the search if so, and passes the numbers on to its listener at most
+ * every REPORT_INTERVAL. Checking is cooperative: nothing is interrupted, so a solve stops at its
+ * next checkpoint.
+ */
+public class SolveMonitor {
+
+  /**
+   * Receives progress, on the thread doing the solve.
+   */
+  public interface Listener {
+    void progress(String phase, long expanded, long frontier);
+  }
+
+  /**
+   * A monitor that never stops a solve and reports to no one, used when none is given.
+   */
+  public static final SolveMonitor NONE = new SolveMonitor(0, null);
+
+  private static final int CHECK_MASK = 4095; // Checkpoints come every 4096 expansions
+  private static final long REPORT_INTERVAL = 100_000_000L; // Nanoseconds between reports
+
+  private final long deadline; // System.nanoTime() past which the solve is given up, with a budget
+  private final long budgetMillis;
+  private final Listener listener;
+  private volatile boolean cancelled;
+  private String phase = "";
+  private long lastReport;
+
+  /**
+   * Creates a monitor.
+   * @param budgetMillis How long the solve may take, or 0 for no limit.
+   * @param listener Receives progress, or null.
+   */
+  public SolveMonitor(long budgetMillis, Listener listener) {
+    if (budgetMillis < 0) {
+      throw new IllegalArgumentException("Time budget must not be negative, was " + budgetMillis);
+    }
+
+    this.budgetMillis = budgetMillis;
+    this.deadline = System.nanoTime() + budgetMillis * 1_000_000L;
+    this.listener = listener;
+  }
+
+  /**
+   * Asks the solve to stop at its next checkpoint. Safe to call from any thread.
+   */
+  public void cancel() {
+    if (this == NONE) {
+      throw new IllegalStateException("The shared monitor cannot be cancelled");
+    }
+    cancelled = true;
+  }
+
+  /**
+   * Checks whether cancel() has been called.
+   * @return True once cancelled.
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Starts a new phase of the solve, reporting it straight away.
+   * @param phase What the solve is doing now.
+   */
+  public void phase(String phase) {
+    check();
+    if (listener != null) {
+      this.phase = phase;
+      lastReport = System.nanoTime();
+      listener.progress(phase, 0, 0);
+    }
+  }
+
+  /**
+   * Records a search's progress, checking for cancellation and reporting every so often.
+   * @param expanded The nodes expanded so far.
+   * @param frontier The nodes waiting to be expanded.
+   */
+  public void expanded(long expanded, long frontier) {
+    if ((expanded & CHECK_MASK) != 0) {
+      return;
+    }
+
+    report(expanded, frontier);
+  }
+
+  /**
+   * Records a search's progress like expanded(), checking every time, for searches that call it
+   * once per batch of nodes rather than per node.
+   * @param expanded The nodes expanded so far.
+   * @param frontier The nodes waiting to be expanded.
+   */
+  public void report(long expanded, long frontier) {
+    check();
+    if (listener != null) {
+      long now = System.nanoTime();
+      if (now - lastReport >= REPORT_INTERVAL) {
+        lastReport = now;
+        listener.progress(phase, expanded, frontier);
+      }
+    }
+  }
+
+  /**
+   * Throws if the solve should stop.
+   * @throws CancellationException When cancelled or out of time.
+   */
+  public void check() {
+    if (cancelled) {
+      throw new CancellationException("Solve cancelled");
+    }
+    if (budgetMillis > 0 && System.nanoTime() - deadline > 0) {
+      throw new CancellationException("Solve ran past its time budget of " + Long.toString(budgetMillis) + " ms");
+    }
+  }
+}
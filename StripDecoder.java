@@ -0,0 +1,399 @@
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decodes images a strip of rows at a time and shrinks them as the strips arrive, averaging every
+ * decoded pixel into the output pixel it lands on. Without subsampling no source row is skipped, so
+ * walls thinner than the shrink factor still darken the pixels they cross and survive thresholding.
+ *
+ * The reader decodes the image once, top to bottom, into a destination that only keeps the strip
+ * being filled, and each strip is handed on as soon as the reader moves past it, so only a strip is
+ * ever held. This works for readers that write their rows in order, such as the JDK's PNG, JPEG,
+ * GIF and TIFF readers. An interlaced PNG or GIF, or a TIFF whose tiles straddle strips, goes back
+ * over rows already handed on; then the decode starts over and reads slabs of rows of a fixed size
+ * as source regions. Those readers decode from the top of the file for every region, so this costs
+ * a few decodes, but every pixel is still read. Readers that can seek to a row, such as BMP, read
+ * one strip at a time as a source region from the start.
+ */
+public class StripDecoder {
+
+  private static final long STRIP_BYTES = 16L << 20; // Rough size of one decoded strip
+  static final long SLAB_BYTES = 32L << 20; // Rough size of one decoded slab, when rows arrive out of order
+
+  private int subsampling = 1;
+
+  /**
+   * Sets how many source pixels in each direction are decoded as one. Subsampling decodes faster,
+   * but walls thinner than it can fall between the decoded pixels and vanish.
+   * @param subsampling The subsampling, 1 to decode every pixel.
+   */
+  public void setSubsampling(int subsampling) {
+    if (subsampling < 1) {
+      throw new IllegalArgumentException("Subsampling must be at least 1, was " + subsampling);
+    }
+    this.subsampling = subsampling;
+  }
+
+  /**
+   * Reads an image, shrinking it to fit within maxSide.
+   * @param file The image file.
+   * @param maxSide The longest side of the result, or 0 to keep the full size.
+   * @param grey Whether to greyscale each strip as it is decoded.
+   * @return A TYPE_BYTE_GRAY image when grey is set, TYPE_INT_RGB otherwise.
+   * @throws IOException When the file cannot be read or is not a supported image.
+   */
+  public BufferedImage read(File file, int maxSide, boolean grey) throws IOException {
+    try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+      if (input == null) {
+        throw new IOException("Unable to open " + file);
+      }
+
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext()) {
+        throw new IOException("Unsupported image format: " + file);
+      }
+
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(input, false, true);
+        return read(reader, maxSide, grey);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /**
+   * Receives an image a band of rows at a time, from the top.
+   */
+  public interface BandSink {
+
+    /**
+     * Starts the image, before its first band, and again when decoding starts over from the top.
+     */
+    default void start() throws IOException {
+    }
+
+    /**
+     * Takes a band, which is only valid until this returns.
+     * @param band The decoded rows.
+     * @param y0 The source row of the band's first row.
+     */
+    void accept(BufferedImage band, int y0) throws IOException;
+  }
+
+  /**
+   * Decodes the first image of a reader top to bottom and hands it on a band of rows at a time,
+   * holding about one band. When the reader can seek to a row cheaply each band is read as a source
+   * region. Otherwise the reader decodes once into a destination that keeps only the band being
+   * filled; if it writes its rows out of order, decoding starts over with each slab of rows read as
+   * a source region, which the reader decodes from the top of the file.
+   * @param reader The reader, with its input set and not seek-forward-only.
+   * @param bandBytes The rough decoded size of each band.
+   * @param sub The subsampling to decode at, 1 for every pixel.
+   * @param slabBytes The rough decoded size of each slab, when rows arrive out of order.
+   * @param sink Receives the bands.
+   * @throws IOException When the image cannot be decoded, or the sink fails.
+   */
+  public static void readBands(ImageReader reader, long bandBytes, int sub, long slabBytes, BandSink sink) throws IOException {
+    int width = reader.getWidth(0);
+    int height = reader.getHeight(0);
+    ImageReadParam param = reader.getDefaultReadParam();
+    param.setSourceSubsampling(sub, sub, 0, 0);
+    int decodedW = (width + sub - 1) / sub;
+    int decodedH = (height + sub - 1) / sub;
+    int bandRows = rowsFor(bandBytes, decodedW, decodedH);
+    sink.start();
+
+    if (!reader.isRandomAccessEasy(0)) {
+      BandBuffer buffer = BandBuffer.create(reader.getImageTypes(0).next(), decodedW, decodedH, bandRows, sub, sink);
+      if (buffer != null) {
+        try {
+          param.setDestination(buffer.destination());
+          reader.read(0, param);
+          buffer.finish();
+          return;
+        } catch (IOException | RuntimeException ex) {
+          UncheckedIOException failed = cause(ex, UncheckedIOException.class);
+          if (failed != null) {
+            throw failed.getCause();
+          }
+          if (cause(ex, OutOfOrder.class) == null) {
+            throw ex;
+          }
+        }
+        param.setDestination(null);
+        sink.start();
+      }
+    }
+
+    int slabRows = reader.isRandomAccessEasy(0) ? bandRows : Math.max(bandRows, rowsFor(slabBytes, decodedW, decodedH)); // Each region decodes from the top, so take few
+    for (int slab = 0; slab < decodedH; slab += slabRows) {
+      int rows = Math.min(slabRows, decodedH - slab);
+      param.setSourceRegion(new Rectangle(0, slab * sub, width, Math.min(height - slab * sub, rows * sub)));
+      BufferedImage decoded = reader.read(0, param);
+      for (int row = 0; row < rows; row += bandRows) {
+        BufferedImage band = rows <= bandRows ? decoded : decoded.getSubimage(0, row, decoded.getWidth(), Math.min(bandRows, rows - row));
+        sink.accept(band, (slab + row) * sub);
+      }
+    }
+  }
+
+  /**
+   * Gets how many decoded rows of 4 byte pixels come to about a number of bytes.
+   */
+  private static int rowsFor(long bytes, int decodedW, int decodedH) {
+    return (int) Math.max(1, Math.min(decodedH, bytes / (4L * decodedW)));
+  }
+
+  /**
+   * Finds an exception of a type among an exception and its causes, since readers wrap what is
+   * thrown from their destination.
+   */
+  private static <T extends Throwable> T cause(Throwable ex, Class<T> type) {
+    for (Throwable at = ex; at != null; at = at.getCause()) {
+      if (type.isInstance(at)) {
+        return type.cast(at);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Thrown from a BandBuffer when the reader writes to a band that has already been handed on.
+   */
+  private static class OutOfOrder extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    OutOfOrder() {
+      super("Image rows were written out of order", null, false, false);
+    }
+  }
+
+  /**
+   * The data of a destination image the size of the whole decoded image that only stores one band
+   * of rows. A write past the band hands the band on and moves it down; a write above it, from a
+   * reader going back over rows, throws OutOfOrder. Reads outside the band see zero.
+   */
+  private static class BandBuffer extends DataBuffer {
+
+    private final ImageTypeSpecifier type;
+    private final int width;
+    private final int height;
+    private final int bandRows;
+    private final int stride; // Elements per row
+    private final int sub;
+    private final BandSink sink;
+    private final DataBuffer band; // The rows from first to first + bandRows
+    private final BufferedImage bandImage;
+    private int first = 0; // First row of the band
+    private int start = 0; // First element of the band
+    private int end; // Element after the band, never past the end of the image
+
+    private BandBuffer(ImageTypeSpecifier type, SampleModel bandModel, DataBuffer band, int height, int stride, int sub, BandSink sink) {
+      super(band.getDataType(), stride * height, band.getNumBanks());
+      this.type = type;
+      this.width = bandModel.getWidth();
+      this.height = height;
+      this.bandRows = bandModel.getHeight();
+      this.stride = stride;
+      this.sub = sub;
+      this.sink = sink;
+      this.band = band;
+      this.end = Math.min(height, bandRows) * stride;
+      ColorModel colors = type.getColorModel();
+      this.bandImage = new BufferedImage(colors, Raster.createWritableRaster(bandModel, band, null), colors.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Sets up a buffer for an image type.
+     * @return The buffer, or null when the type's rows are not laid out one after another, or the
+     *   whole image would be too large to address.
+     */
+    static BandBuffer create(ImageTypeSpecifier type, int width, int height, int bandRows, int sub, BandSink sink) {
+      SampleModel model = type.getSampleModel(width, bandRows);
+      int stride;
+      if (model instanceof ComponentSampleModel) {
+        stride = ((ComponentSampleModel) model).getScanlineStride();
+      } else if (model instanceof MultiPixelPackedSampleModel) {
+        stride = ((MultiPixelPackedSampleModel) model).getScanlineStride();
+      } else if (model instanceof SinglePixelPackedSampleModel) {
+        stride = ((SinglePixelPackedSampleModel) model).getScanlineStride();
+      } else {
+        return null;
+      }
+      if ((long) stride * height > Integer.MAX_VALUE) {
+        return null;
+      }
+      return new BandBuffer(type, model, model.createDataBuffer(), height, stride, sub, sink);
+    }
+
+    /**
+     * Makes the image the reader decodes into.
+     */
+    BufferedImage destination() {
+      SampleModel model = type.getSampleModel(width, height);
+      ColorModel colors = type.getColorModel();
+      return new BufferedImage(colors, new BandRaster(model, this), colors.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Moves the band down to a row the reader is writing.
+     * @return The row within the band.
+     */
+    int bandRow(int y) {
+      if (y < first) {
+        throw new OutOfOrder();
+      }
+      while (y >= first + bandRows) {
+        handOn(bandRows);
+      }
+      return y - first;
+    }
+
+    @Override
+    public int getElem(int bank, int i) {
+      return i >= start && i < end ? band.getElem(bank, i - start) : 0;
+    }
+
+    @Override
+    public void setElem(int bank, int i, int value) {
+      if (i < start) {
+        throw new OutOfOrder();
+      }
+      while (i >= end) {
+        handOn(bandRows);
+      }
+      band.setElem(bank, i - start, value);
+    }
+
+    /**
+     * Hands on the rows the reader left after it finished.
+     */
+    void finish() {
+      while (first < height) {
+        handOn(Math.min(bandRows, height - first));
+      }
+    }
+
+    private void handOn(int rows) {
+      try {
+        sink.accept(rows == bandRows ? bandImage : bandImage.getSubimage(0, 0, width, rows), first * sub);
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+      first += bandRows;
+      start = first * stride;
+      end = Math.min(height, first + bandRows) * stride;
+    }
+  }
+
+  /**
+   * The raster of a BandBuffer's destination. Writes of a single row, the way readers copy in each
+   * decoded row, go straight to the band's own raster; anything else goes through the BandBuffer an
+   * element at a time.
+   */
+  private static class BandRaster extends WritableRaster {
+
+    private final BandBuffer buffer;
+    private final WritableRaster band;
+
+    BandRaster(SampleModel model, BandBuffer buffer) {
+      super(model, buffer, new Point(0, 0));
+      this.buffer = buffer;
+      this.band = buffer.bandImage.getRaster();
+    }
+
+    @Override
+    public void setRect(int dx, int dy, Raster source) {
+      if (source.getHeight() == 1 && source.getMinY() + dy >= 0) {
+        band.setRect(dx, buffer.bandRow(source.getMinY() + dy) - source.getMinY(), source);
+      } else {
+        super.setRect(dx, dy, source);
+      }
+    }
+
+    @Override
+    public void setDataElements(int x, int y, int w, int h, Object data) {
+      if (h == 1) {
+        band.setDataElements(x, buffer.bandRow(y), w, 1, data);
+      } else {
+        super.setDataElements(x, y, w, h, data);
+      }
+    }
+
+    @Override
+    public void setPixels(int x, int y, int w, int h, int[] pixels) {
+      if (h == 1) {
+        band.setPixels(x, buffer.bandRow(y), w, 1, pixels);
+      } else {
+        super.setPixels(x, y, w, h, pixels);
+      }
+    }
+
+    @Override
+    public void setPixel(int x, int y, int[] pixel) {
+      band.setPixel(x, buffer.bandRow(y), pixel);
+    }
+
+    @Override
+    public void setSample(int x, int y, int b, int sample) {
+      band.setSample(x, buffer.bandRow(y), b, sample);
+    }
+  }
+
+  /**
+   * Reads the first image of a reader strip by strip.
+   */
+  private BufferedImage read(ImageReader reader, int maxSide, boolean grey) throws IOException {
+    int width = reader.getWidth(0);
+    int height = reader.getHeight(0);
+    int type = grey ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB;
+    if (maxSide <= 0 || (width <= maxSide && height <= maxSide)) { //Nothing to shrink
+      return convert(reader.read(0, reader.getDefaultReadParam()), type);
+    }
+
+    int[] size = ImageProcessing.fitWithin(width, height, maxSide);
+    int sub = Math.min(subsampling, Math.max(1, Math.min(width / size[0], height / size[1]))); // Never below the output's resolution
+    BufferedImage output = new BufferedImage(size[0], size[1], type);
+    AreaAccumulator[] accumulator = new AreaAccumulator[1];
+    readBands(reader, STRIP_BYTES, sub, SLAB_BYTES, new BandSink() {
+      @Override
+      public void start() {
+        accumulator[0] = new AreaAccumulator(output, width, height, sub, grey);
+      }
+
+      @Override
+      public void accept(BufferedImage strip, int y0) {
+        accumulator[0].add(convert(strip, type), y0);
+      }
+    });
+
+    accumulator[0].finish();
+    return output;
+  }
+
+  /**
+   * Copies a strip into a whole image of the type the accumulator reads fastest, greyscaling the
+   * same way ImageProcessing.greyScale does.
+   */
+  private static BufferedImage convert(BufferedImage strip, int type) {
+    if (strip.getType() == type && strip.getRaster().getParent() == null) {
+      return strip;
+    }
+
+    BufferedImage converted = new BufferedImage(strip.getWidth(), strip.getHeight(), type);
+    Graphics converter = converted.getGraphics();
+    converter.drawImage(strip, 0, 0, null);
+    converter.dispose();
+    return converted;
+  }
+}
@@ -0,0 +1,435 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * A maze made by MazeGenerator, kept as the joins between its cells rather than as pixels, so it can
+ * be drawn as an image, written straight into a MappedMaze, or checked against a solver's path at
+ * any size. The shortest route from the top left cell to the bottom right one is found when it is
+ * made, by breadth first search over the cells, and the exact length of the shortest path through
+ * its pixels when first asked for; together they are the ground truth a path is held to.
+ *
+ * Cell (column, row) has its top left pixel at (wall + column * pitch, wall + row * pitch), where
+ * the pitch is the passage width plus the wall thickness, and the wall around the edge is as thick
+ * as the walls inside.
+ */
+public class SyntheticMaze {
+
+  static final int RIGHT = 1; // A cell's join to the cell on its right
+  static final int DOWN = 2; // A cell's join to the cell below it
+  private static final int WALL_GREY = 35;
+  private static final int PASSAGE_GREY = 220;
+  private static final int BAND = 64; // Columns blurred down the image at a time
+
+  private final byte[] joins;
+  private final int columns;
+  private final int rows;
+  private final int passage;
+  private final int wall;
+  private final int pitch; // Pixels from one cell to the next
+  private final long seed;
+  private final boolean perfect; // Only one route between any two cells
+  private final int shortestSteps;
+  private long shortestLength = -1; // Found the first time it is asked for
+
+  SyntheticMaze(byte[] joins, int columns, int rows, int passage, int wall, long seed, boolean perfect) {
+    this.joins = joins;
+    this.columns = columns;
+    this.rows = rows;
+    this.passage = passage;
+    this.wall = wall;
+    this.pitch = passage + wall;
+    this.seed = seed;
+    this.perfect = perfect;
+    this.shortestSteps = shortestSteps();
+  }
+
+  /**
+   * Counts the cells moved through on the shortest route from the first cell to the last.
+   */
+  private int shortestSteps() {
+    int last = joins.length - 1;
+    long[] seen = new long[(joins.length + 63) >>> 6];
+    int[] queue = new int[joins.length];
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = 0;
+    seen[0] = 1;
+
+    for (int steps = 0; head < tail; steps++) {
+      for (int level = tail; head < level; head++) {
+        int cell = queue[head];
+        if (cell == last) {
+          return steps;
+        }
+        for (int move = 0; move < 4; move++) {
+          int next = MazeGenerator.neighbour(cell, move, columns, rows);
+          if (next >= 0 && (seen[next >>> 6] & (1L << next)) == 0 && isJoined(joins, cell, next, columns)) {
+            seen[next >>> 6] |= 1L << next;
+            queue[tail++] = next;
+          }
+        }
+      }
+    }
+    throw new IllegalStateException("Generated maze has no route between its corners");
+  }
+
+  /**
+   * Checks whether two cells are neighbours with no wall between them.
+   */
+  static boolean isJoined(byte[] joins, int a, int b, int columns) {
+    int first = Math.min(a, b);
+    int gap = Math.abs(a - b);
+    if (gap == columns) {
+      return (joins[first] & DOWN) != 0;
+    }
+    return gap == 1 && (joins[first] & RIGHT) != 0;
+  }
+
+  /**
+   * Draws the maze as a grey image: dark walls, light passages, then Gaussian noise on every pixel
+   * and a blur that grows from none along the top edge to its full radius along the bottom, like a
+   * photo of a page tilted away from the camera. The same maze, noise and blur always give the same
+   * image.
+   * @param noise The standard deviation of the noise in grey levels, 0 for none.
+   * @param blur The radius of the box blur along the bottom edge in pixels, 0 for none.
+   * @return The image.
+   */
+  public BufferedImage render(double noise, int blur) {
+    int width = getWidth();
+    int height = getHeight();
+    if ((long) width * height > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("A " + width + " x " + height + " maze is too large for an image, use toMappedMaze()");
+    }
+
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    IntStream.range(0, height).parallel().forEach(y -> {
+      long[] open = new long[(width + 63) >>> 6];
+      fillRow(y, open);
+      SplittableRandom random = new SplittableRandom(seed + y * 0x9E3779B97F4A7C15L); // Rows get their own stream, so the order they run in does not matter
+      for (int x = 0; x < width; x++) {
+        long grey = (open[x >>> 6] & (1L << x)) != 0 ? PASSAGE_GREY : WALL_GREY;
+        if (noise > 0) {
+          grey += Math.round(noise * random.nextGaussian());
+        }
+        pixels[y * width + x] = (byte) Math.max(0, Math.min(255, grey));
+      }
+    });
+
+    if (blur > 0) {
+      blur(pixels, width, height, blur);
+    }
+    return image;
+  }
+
+  /**
+   * Box blurs across and then down the image, the radius at each row scaled by how far down it is.
+   * Windows are cut off at the edges of the image rather than padded.
+   */
+  private static void blur(byte[] pixels, int width, int height, int blur) {
+    int[] radius = new int[height];
+    for (int y = 0; y < height; y++) {
+      radius[y] = height == 1 ? blur : (int) ((blur * (long) y + (height - 1) / 2) / (height - 1));
+    }
+
+    IntStream.range(0, height).parallel().forEach(y -> {
+      int r = radius[y];
+      if (r == 0) {
+        return;
+      }
+      int[] sums = new int[width + 1];
+      for (int x = 0; x < width; x++) {
+        sums[x + 1] = sums[x] + (pixels[y * width + x] & 0xFF);
+      }
+      for (int x = 0; x < width; x++) {
+        int from = Math.max(0, x - r);
+        int to = Math.min(width - 1, x + r);
+        pixels[y * width + x] = (byte) ((sums[to + 1] - sums[from]) / (to - from + 1));
+      }
+    });
+
+    IntStream.range(0, (width + BAND - 1) / BAND).parallel().forEach(band -> {
+      int left = band * BAND;
+      int across = Math.min(BAND, width - left);
+      int[] sums = new int[(height + 1) * across]; // Running sums down each column of the band
+      for (int y = 0; y < height; y++) {
+        for (int i = 0; i < across; i++) {
+          sums[(y + 1) * across + i] = sums[y * across + i] + (pixels[y * width + left + i] & 0xFF);
+        }
+      }
+      for (int y = 0; y < height; y++) {
+        int from = Math.max(0, y - radius[y]);
+        int to = Math.min(height - 1, y + radius[y]);
+        for (int i = 0; i < across; i++) {
+          pixels[y * width + left + i] = (byte) ((sums[(to + 1) * across + i] - sums[from * across + i]) / (to - from + 1));
+        }
+      }
+    });
+  }
+
+  /**
+   * Writes the maze, without noise or blur, into a maze file a row at a time, for mazes too large
+   * for an image.
+   * @param file The maze file to write, replaced if it exists.
+   * @return The maze.
+   * @throws IOException When the file cannot be written.
+   */
+  public MappedMaze toMappedMaze(Path file) throws IOException {
+    MappedMaze maze = MappedMaze.create(file, getWidth(), getHeight());
+    long[] open = new long[(getWidth() + 63) >>> 6];
+    for (int y = 0; y < getHeight(); y++) {
+      fillRow(y, open);
+      maze.setRow(y, open);
+    }
+
+    maze.flush();
+    return maze;
+  }
+
+  /**
+   * Sets the bits of the open pixels in a row, 64 to a word. Where four joined cells meet, as in a
+   * room, the square of wall between them is open too.
+   */
+  private void fillRow(int y, long[] open) {
+    Arrays.fill(open, 0);
+    int row = Math.floorDiv(y - wall, pitch);
+    if (row < 0 || row >= rows) {
+      return;
+    }
+
+    boolean between = (y - wall) % pitch >= passage; // In the wall under this row of cells
+    for (int column = 0; column < columns; column++) {
+      int cell = row * columns + column;
+      int x = wall + column * pitch;
+      if (!between) {
+        setRun(open, x, (joins[cell] & RIGHT) != 0 ? x + pitch : x + passage);
+      } else if ((joins[cell] & DOWN) != 0) {
+        boolean corner = (joins[cell] & RIGHT) != 0 && (joins[cell + 1] & DOWN) != 0 && (joins[cell + columns] & RIGHT) != 0;
+        setRun(open, x, corner ? x + pitch : x + passage);
+      }
+    }
+  }
+
+  private static void setRun(long[] open, int from, int to) {
+    int last = (to - 1) >>> 6;
+    for (int word = from >>> 6; word <= last; word++) {
+      long mask = -1L;
+      if (word == from >>> 6) {
+        mask &= -1L << from;
+      }
+      if (word == last) {
+        mask &= -1L >>> (63 - ((to - 1) & 63));
+      }
+      open[word] |= mask;
+    }
+  }
+
+  /**
+   * Checks a solver's path against the maze. The path must run from the start to the end without
+   * crossing a wall between two cells, and must be exactly getShortestLength() long, so a path
+   * that strays from the shortest anywhere fails, however it hugs the corners. In a perfect maze it
+   * must also pass through exactly the cells of the one route, with no detours.
+   * Binarizing can move an edge by a pixel or two, so a pixel counts as part of the cell whose
+   * passage it is nearest, walls split down the middle. An edge moved far enough to change the
+   * length fails the path too, as the binarizing is part of what is being checked.
+   * @param path The path, or null when the solver found none.
+   * @return What is wrong with the path, or null when it is right.
+   */
+  public String verify(SolutionPath path) {
+    if (path == null) {
+      return "No path found";
+    }
+
+    Route route = new Route();
+    path.forEachNode(route);
+    if (route.problem != null) {
+      return route.problem;
+    }
+    if (route.first != 0 || route.cell != joins.length - 1) {
+      return "Path runs from cell " + route.first + " to cell " + route.cell + " instead of 0 to " + (joins.length - 1);
+    }
+    if (Math.round(path.getLength()) != getShortestLength()) {
+      return "Path is " + Math.round(path.getLength()) + " pixels long instead of the " + getShortestLength() + " of the shortest path";
+    }
+    if (perfect && route.moves != shortestSteps) {
+      return "Path moves through " + route.moves + " cells instead of the " + shortestSteps + " of the only route";
+    }
+    return null;
+  }
+
+  /**
+   * Follows a path through the cells, see verify().
+   */
+  private class Route implements MappedBreadthFirstSearch.PathSink {
+
+    int first = -1;
+    int cell = -1;
+    long moves;
+    String problem;
+
+    @Override
+    public void accept(int x, int y) {
+      int next = cellAt(y, rows) * columns + cellAt(x, columns);
+      if (cell < 0) {
+        first = next;
+      } else if (next != cell) {
+        if (problem == null && !isJoined(joins, cell, next, columns)) {
+          problem = "Path crosses a wall at " + x + "," + y;
+        }
+        moves++;
+      }
+      cell = next;
+    }
+  }
+
+  /**
+   * Gets the column or row of cells a pixel coordinate falls in, with each wall split between the
+   * cells either side of it.
+   */
+  private int cellAt(int coordinate, int cells) {
+    int cell = Math.floorDiv(coordinate - wall - passage - wall / 2, pitch) + 1;
+    return Math.max(0, Math.min(cells - 1, cell));
+  }
+
+  /**
+   * Gets the point the route starts from, the middle of the top left cell.
+   * @return The starting pixel.
+   */
+  public int[] getStart() {
+    return new int[] {wall + passage / 2, wall + passage / 2};
+  }
+
+  /**
+   * Gets the point the route ends at, the middle of the bottom right cell.
+   * @return The ending pixel.
+   */
+  public int[] getEnd() {
+    return new int[] {wall + (columns - 1) * pitch + passage / 2, wall + (rows - 1) * pitch + passage / 2};
+  }
+
+  /**
+   * Gets the number of moves from cell to cell on the shortest route.
+   * @return The number of moves.
+   */
+  public int getShortestSteps() {
+    return shortestSteps;
+  }
+
+  /**
+   * Gets the length of the shortest path from getStart() to getEnd() through the open pixels of the
+   * maze without noise or blur, moving up, down, left or right a pixel at a time, which is the
+   * length a solver's path through a clean image must have. Found by breadth first search over the
+   * pixels the first time it is asked for, which takes a bit per pixel of heap while it runs.
+   * @return The length in pixels.
+   */
+  public long getShortestLength() {
+    if (shortestLength < 0) {
+      shortestLength = searchPixels();
+    }
+    return shortestLength;
+  }
+
+  /**
+   * Gets an upper bound on getShortestLength(): the length of the shortest route along the middle
+   * of its passages, which a path can beat by cutting the inside of its bends. Known without a
+   * search.
+   * @return The length in pixels.
+   */
+  public long getCentreLineLength() {
+    return (long) shortestSteps * pitch;
+  }
+
+  /**
+   * Breadth first search over the open pixels a level at a time, see getShortestLength().
+   */
+  private long searchPixels() {
+    int width = getWidth();
+    int[] start = getStart();
+    int[] end = getEnd();
+    long goal = (long) end[1] * width + end[0];
+    long[] seen = new long[(int) (((long) width * getHeight() + 63) >>> 6)];
+    long[] level = {(long) start[1] * width + start[0]};
+    long[] next = new long[64];
+    int size = 1;
+    seen[(int) (level[0] >>> 6)] |= 1L << level[0];
+
+    for (long length = 0; size > 0; length++) {
+      int found = 0;
+      for (int i = 0; i < size; i++) {
+        long pixel = level[i];
+        if (pixel == goal) {
+          return length;
+        }
+        int x = (int) (pixel % width);
+        int y = (int) (pixel / width);
+        for (int move = 0; move < 4; move++) {
+          int nx = x + (move == 0 ? 1 : move == 1 ? -1 : 0);
+          int ny = y + (move == 2 ? 1 : move == 3 ? -1 : 0);
+          long neighbour = (long) ny * width + nx;
+          if (isOpen(nx, ny) && (seen[(int) (neighbour >>> 6)] & (1L << neighbour)) == 0) {
+            seen[(int) (neighbour >>> 6)] |= 1L << neighbour;
+            if (found == next.length) {
+              next = Arrays.copyOf(next, found * 2);
+            }
+            next[found++] = neighbour;
+          }
+        }
+      }
+      long[] swap = level;
+      level = next;
+      next = swap;
+      size = found;
+    }
+    throw new IllegalStateException("Generated maze has no path between its corners");
+  }
+
+  /**
+   * Checks whether a pixel is open, as fillRow() would set it.
+   */
+  private boolean isOpen(int x, int y) {
+    if (x < wall || y < wall || x >= getWidth() || y >= getHeight()) {
+      return false;
+    }
+
+    int cell = (y - wall) / pitch * columns + (x - wall) / pitch;
+    boolean across = (x - wall) % pitch >= passage; // In the wall right of the cell
+    boolean down = (y - wall) % pitch >= passage; // In the wall under the cell
+    if (!across && !down) {
+      return true;
+    } else if (!down) {
+      return (joins[cell] & RIGHT) != 0;
+    } else if (!across) {
+      return (joins[cell] & DOWN) != 0;
+    }
+    return (joins[cell] & RIGHT) != 0 && (joins[cell] & DOWN) != 0 && (joins[cell + 1] & DOWN) != 0 && (joins[cell + columns] & RIGHT) != 0;
+  }
+
+  /**
+   * Checks whether the maze has only one route between any two cells.
+   * @return True with no braiding and no rooms.
+   */
+  public boolean isPerfect() {
+    return perfect;
+  }
+
+  /**
+   * Gets the width of the maze.
+   * @return The width in pixels.
+   */
+  public int getWidth() {
+    return wall + columns * pitch;
+  }
+
+  /**
+   * Gets the height of the maze.
+   * @return The height in pixels.
+   */
+  public int getHeight() {
+    return wall + rows * pitch;
+  }
+}
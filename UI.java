@@ -1,11 +1,14 @@
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Graphics; // Add this import statement
+import java.awt.Graphics2D;
 import java.awt.event.*;
 import java.awt.image.*;
 import java.io.File;
 import java.io.IOException;
-import javax.imageio.*;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import javax.swing.*;
 
 public class UI {
@@ -13,11 +16,16 @@ public class UI {
   private JFrame window = new JFrame();
   private JFrame solutionFrame; 
   private final ImageProcessing imageProcessor = new ImageProcessing();
-  private MazeSolver solver;
+  private final StripDecoder decoder = new StripDecoder();
+  private final SearchStrategy strategy = new JumpPointSearch(); // How the solver searches for a path
+  private static final long SOLVE_BUDGET = 120_000; // Milliseconds a solve may take before it is given up
 
   private BufferedImage originalImage; // Original image
   private BufferedImage processedImage; // Processed image
   private BufferedImage markedImage; // Image with start / end markings
+  private WallGrid wallGrid; // Processed image packed one bit per pixel for the solver
+  private PreparedMaze preparedMaze; // Nodes of wallGrid, kept between solves of the same image
+  private SolveTask solving; // The solve running in the background, null once its thread has finished
 
   private JPanel images; // Panel for images (top)
   private JPanel markings; // Panel for marking options (middle)
@@ -30,6 +38,7 @@ public class UI {
    * Constructor for the newUI class.
    */
   public UI() {
+    imageProcessor.setParallelism(Runtime.getRuntime().availableProcessors());
     window = new JFrame("Maze Solver");
     window.setSize(200, 100);
     window.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
@@ -43,13 +52,15 @@ public class UI {
    * @param img The image to be displayed.
    */
   private void setImage(BufferedImage img) {
-    if (img.getWidth() > 900 || img.getHeight() > 900) {
-      this.originalImage = imageProcessor.resize(img, 900);
+    if (imageProcessor.exceedsMaxSide(img)) {
+      this.originalImage = imageProcessor.resize(img, imageProcessor.getMaxSide());
     } else {
       this.originalImage = img;
     }
 
     processedImage = imageProcessor.contrastDetect(originalImage);
+    wallGrid = imageProcessor.contrastGrid(originalImage);
+    preparedMaze = null;
     window.setSize(originalImage.getWidth() * 2 + 50, originalImage.getHeight() + 150);
     window.setLocationRelativeTo(null);
   }
@@ -145,27 +156,14 @@ public class UI {
       renderImage(); 
     });
 
-    edgeDetectThreshold.addChangeListener(e -> {
-      if (edgeDetectThreshold.getValueIsAdjusting() == false) {
-        markedImage = imageProcessor.processImage(originalImage, edgeDetectThreshold.getValue());
-        threshold.setText("Threshold: " + Integer.toString(edgeDetectThreshold.getValue()));
-        renderImage(); 
-      }
+    edgeDetectThreshold.addChangeListener(e -> { // Only re-thresholds the cached gradient field, so it can follow the drag
+      markedImage = imageProcessor.processImage(originalImage, edgeDetectThreshold.getValue());
+      threshold.setText("Threshold: " + Integer.toString(edgeDetectThreshold.getValue()));
+      renderImage(); 
     });
 
-    quickSolve.addActionListener(e -> {
-      try {
-        handleSolve();
-      } catch (Exception ex) {
-        renderPopUp("Error solving maze, select a point away from the maze walls");
-      }}); 
-
-    accurateSolve.addActionListener(e -> {
-      try {
-        handleSolve();
-      } catch (Exception ex) {
-        renderPopUp("Error solving maze, select a point away from the maze walls");
-      }}); 
+    quickSolve.addActionListener(e -> handleSolve());
+    accurateSolve.addActionListener(e -> handleAccurateSolve());
 
     setEndpoints.addActionListener(e -> renderSetEndpoints());
     reset.addActionListener(e -> handleReset());
@@ -239,8 +237,12 @@ public class UI {
     JFileChooser fileChooser = new JFileChooser();
     fileChooser.showOpenDialog(null);
     File file = fileChooser.getSelectedFile();
+    if (file == null) {
+      return;
+    }
+
     try {
-      BufferedImage img = ImageIO.read(file);
+      BufferedImage img = decoder.read(file, imageProcessor.getMaxSide(), false); // Shrinks while decoding
       setImage(img);
       renderImage(); 
       renderMarkingOptions(); 
@@ -257,6 +259,9 @@ public class UI {
    * Handles reseting the program
    */
   private void handleReset() {
+    if (solving != null) {
+      solving.stop();
+    }
     window.dispose();
     window = new JFrame("Maze Solver"); 
     startingPoint = null;
@@ -264,6 +269,8 @@ public class UI {
     markedImage = null;
     originalImage = null;
     processedImage = null;
+    wallGrid = null;
+    preparedMaze = null;
     window.setSize(200, 100);
     window.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
     renderStartingUI();
@@ -272,75 +279,178 @@ public class UI {
   }
 
   /**
-   * Calls MazeSolver to solve the maze starting with a pixel size of 3.
+   * Gets the prepared maze for the current image, preparing it on the first solve.
+   * @return The prepared maze at a pixel size of 1.
    */
-  private void handleSolve() {
-    if (startingPoint == null || endingPoint == null) {
-      renderPopUp("Please select both a starting and ending point.");
-      return;
+  private PreparedMaze prepareMaze() {
+    if (preparedMaze == null) {
+      preparedMaze = new PreparedMaze(wallGrid, 1);
     }
+    return preparedMaze;
+  }
 
-    solutionFrame = new JFrame("Solving... This might take a while");
-    solutionFrame.setSize(400, 0);
-    solutionFrame.setLocationRelativeTo(null);
-    solutionFrame.setVisible(true);
-
-    int[][] solutionCoords = null; 
-    int pixelSize = 3; 
-
-    while (solutionCoords == null && pixelSize >= 1) {
-      solver = new MazeSolver(processedImage, pixelSize, startingPoint, endingPoint);
-      solutionCoords = solver.solve(); 
-      pixelSize -= 1; 
-    }
-    
-    try {
-      renderSolution(solver.solve());
-    } catch (NullPointerException ex) {
-      renderPopUp("No solution found.");
-      solutionFrame.dispose();
-    }   
+  /**
+   * Calls MazeSolver to solve the maze coarse to fine, from a pixel size of 4 down to 1.
+   */
+  private void handleSolve() {
+    startSolve("Solving... This might take a while", true);
   }
 
   /**
    * Calls MazeSolver to solve the maze with pixel size of 1.
    */
   private void handleAccurateSolve() {
+    startSolve("Solving... Finding the most accurate path takes longer than the quick solve.", false);
+  }
+
+  /**
+   * Starts solving the maze in the background, showing its progress in a frame with a cancel button.
+   * @param title The title of the progress frame.
+   * @param coarseToFine Whether to solve coarse to fine or only at a pixel size of 1.
+   */
+  private void startSolve(String title, boolean coarseToFine) {
     if (startingPoint == null || endingPoint == null) {
       renderPopUp("Please select both a starting and ending point.");
       return;
-    } 
+    }
+    if (solving != null) {
+      renderPopUp(solving.isCancelled() ? "Still stopping the last solve, try again in a moment." : "Already solving, cancel the current solve first.");
+      return;
+    }
 
-    solutionFrame = new JFrame("Solving... Finding the most accurate path takes longer than the quick solve.");
-    solutionFrame.setSize(700, 0);
+    JProgressBar progress = new JProgressBar();
+    progress.setIndeterminate(true);
+    progress.setStringPainted(true);
+    progress.setString("Preparing nodes");
+    JButton cancel = new JButton("Cancel");
+    JPanel panel = new JPanel();
+    panel.add(progress);
+    panel.add(cancel);
+
+    solving = new SolveTask(progress, coarseToFine);
+    cancel.addActionListener(e -> solving.stop());
+
+    solutionFrame = new JFrame(title);
+    solutionFrame.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+    solutionFrame.addWindowListener(new WindowAdapter() {
+      @Override
+      public void windowClosing(WindowEvent e) {
+        solving.stop();
+      }
+    });
+    solutionFrame.add(panel);
+    solutionFrame.setSize(Math.max(400, progress.getPreferredSize().width * 3), 90);
     solutionFrame.setLocationRelativeTo(null);
     solutionFrame.setVisible(true);
 
-    solver = new MazeSolver(processedImage, 1, startingPoint, endingPoint);
+    solving.execute();
+  }
 
-    try {
-      renderSolution(solver.solve());
-    } catch (NullPointerException ex) {
-      renderPopUp("No solution found.");
+  /**
+   * Prepares the maze and runs MazeSolver off the Event Dispatch Thread, so the window keeps
+   * painting. Progress reaches the progress bar at most ten times a second, and the solve is given
+   * up when cancelled or after SOLVE_BUDGET milliseconds. Cancelling closes the progress frame
+   * straight away, but the task stays the one solving until its thread has actually stopped, so
+   * a second solve cannot start alongside it.
+   */
+  private class SolveTask extends SwingWorker<SolutionPath, String> {
+
+    private final JProgressBar progress;
+    private final boolean coarseToFine;
+    private final SolveMonitor monitor = new SolveMonitor(SOLVE_BUDGET, this::report);
+    private final WallGrid grid = wallGrid; // Read on the Event Dispatch Thread, as setImage may replace them
+    private final PreparedMaze prepared = preparedMaze;
+    private final int[] start = startingPoint.clone();
+    private final int[] end = endingPoint.clone();
+    private volatile PreparedMaze built; // The prepared maze once ready, to keep for the next solve
+
+    SolveTask(JProgressBar progress, boolean coarseToFine) {
+      this.progress = progress;
+      this.coarseToFine = coarseToFine;
+    }
+
+    /**
+     * Stops the solve at its next checkpoint and closes the progress frame.
+     */
+    void stop() {
+      monitor.cancel();
+      cancel(false);
+    }
+
+    @Override
+    protected SolutionPath doInBackground() {
+      try {
+        monitor.phase("Preparing nodes");
+        built = prepared != null ? prepared : new PreparedMaze(grid, 1, monitor);
+
+        MazeSolver solver = new MazeSolver(built, start, end);
+        solver.setStrategy(strategy);
+        solver.setMonitor(monitor);
+        return coarseToFine ? solver.solvePathCoarseToFine(2) : solver.solvePath();
+      } finally {
+        SwingUtilities.invokeLater(this::finished); // done() runs as soon as the task is cancelled, this only once the thread is free
+      }
+    }
+
+    /**
+     * Lets the next solve start and keeps the prepared maze, on the Event Dispatch Thread once the
+     * background work has stopped.
+     */
+    private void finished() {
+      if (solving == this) {
+        solving = null;
+      }
+      if (built != null && wallGrid == grid) {
+        preparedMaze = built;
+      }
+    }
+
+    private void report(String phase, long expanded, long frontier) {
+      publish(expanded == 0 ? phase : phase + ": " + String.format("%,d", expanded) + " nodes expanded, " + String.format("%,d", frontier) + " in the frontier");
+    }
+
+    @Override
+    protected void process(List<String> updates) {
+      progress.setString(updates.get(updates.size() - 1));
+    }
+
+    @Override
+    protected void done() {
+      solutionFrame.dispose();
+      if (isCancelled()) {
+        return;
+      }
+
+      try {
+        SolutionPath solution = get();
+        if (solution == null) {
+          renderPopUp("No solution found.");
+        } else {
+          renderSolution(solution);
+        }
+      } catch (ExecutionException ex) {
+        if (ex.getCause() instanceof CancellationException) {
+          renderPopUp(ex.getCause().getMessage() + ", no solution found.");
+        } else {
+          renderPopUp("Error solving maze, select a point away from the maze walls");
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
     }
   }
 
   /**
    * Renders the solution to the maze 
    */
-  private void renderSolution(int[][] solutionCoords) {
+  private void renderSolution(SolutionPath solution) {
     BufferedImage solutionImage = new BufferedImage(originalImage.getWidth(), originalImage.getHeight(), BufferedImage.TYPE_INT_ARGB);
-    Graphics g = solutionImage.getGraphics();
+    Graphics2D g = solutionImage.createGraphics();
     g.drawImage(originalImage, 0, 0, null);
-    g.dispose();
 
-    for (int[] coord : solutionCoords) {
-      for (int x = coord[0]; x < coord[0] + 3; x++) {
-        for (int y = coord[1]; y < coord[1] + 3; y++) {
-          solutionImage.setRGB(x, y, Color.BLUE.getRGB());
-        }
-      }
-    }
+    g.setColor(Color.BLUE);
+    solution.draw(g);
+    g.dispose();
 
     solutionFrame.dispose();
     solutionFrame = new JFrame();
@@ -0,0 +1,194 @@
+import java.awt.image.*;
+import java.util.Arrays;
+
+/**
+ * A binarized maze packed one bit per pixel into long[] rows, set where there is a wall. Each row
+ * starts on a fresh word and the padding bits past the right edge are set, so anything off the grid
+ * reads as wall. A pixel is open exactly where the binarized image had pure white (getRGB == -1),
+ * which is what MazeSolver has always treated as open.
+ */
+public class WallGrid {
+
+  private final int width;
+  private final int height;
+  private final int stride; // Words per row
+  private final long[] words;
+
+  /**
+   * Creates a grid that is all wall.
+   * @param width The width in pixels.
+   * @param height The height in pixels.
+   */
+  public WallGrid(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.stride = (width + 63) >>> 6;
+    this.words = new long[stride * height];
+    Arrays.fill(words, -1L);
+  }
+
+  /**
+   * Packs a binarized image, treating every pixel that is not pure white as wall.
+   * @param img The binarized image.
+   * @return The grid.
+   */
+  public static WallGrid fromImage(BufferedImage img) {
+    int w = img.getWidth();
+    int h = img.getHeight();
+    WallGrid grid = new WallGrid(w, h);
+
+    if (img.getType() == BufferedImage.TYPE_BYTE_GRAY && img.getRaster().getParent() == null) {
+      byte[] samples = GreyPlaneEngine.samples(img);
+      for (int y = 0; y < h; y++) {
+        for (int x = 0; x < w; x++) {
+          if (GreyPlaneEngine.toSrgb(samples[y * w + x] & 0xFF) == 255) { // getRGB gives -1
+            grid.setOpen(x, y);
+          }
+        }
+      }
+      return grid;
+    }
+
+    int[] row = new int[w];
+    for (int y = 0; y < h; y++) {
+      img.getRGB(0, y, w, 1, row, 0, w);
+      for (int x = 0; x < w; x++) {
+        if (row[x] == -1) {
+          grid.setOpen(x, y);
+        }
+      }
+    }
+
+    return grid;
+  }
+
+  /**
+   * Gets the width of the grid.
+   * @return The width in pixels.
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Gets the height of the grid.
+   * @return The height in pixels.
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Gets the number of words in each row.
+   * @return The row stride in words.
+   */
+  public int getStride() {
+    return stride;
+  }
+
+  /**
+   * Gets the packed rows, bit x & 63 of word y * stride + (x >> 6) for pixel (x, y). Writes go
+   * straight into the grid.
+   * @return The words.
+   */
+  long[] words() {
+    return words;
+  }
+
+  /**
+   * Checks whether a pixel is wall. Pixels off the grid are wall.
+   * @param x The x-coordinate.
+   * @param y The y-coordinate.
+   * @return True for wall.
+   */
+  public boolean isWall(int x, int y) {
+    if (x < 0 || y < 0 || x >= width || y >= height) {
+      return true;
+    }
+
+    return (words[y * stride + (x >>> 6)] & (1L << x)) != 0;
+  }
+
+  /**
+   * Marks a pixel as open.
+   * @param x The x-coordinate.
+   * @param y The y-coordinate.
+   */
+  public void setOpen(int x, int y) {
+    words[y * stride + (x >>> 6)] &= ~(1L << x);
+  }
+
+  /**
+   * Marks a pixel as wall.
+   * @param x The x-coordinate.
+   * @param y The y-coordinate.
+   */
+  public void setWall(int x, int y) {
+    words[y * stride + (x >>> 6)] |= 1L << x;
+  }
+
+  /**
+   * Checks whether a size x size block is entirely open, a word at a time.
+   * @param x The left edge of the block.
+   * @param y The top edge of the block.
+   * @param size The side length of the block.
+   * @return True when every pixel in the block is open and on the grid.
+   */
+  public boolean isBlockOpen(int x, int y, int size) {
+    if (x < 0 || y < 0 || x + size > width || y + size > height) {
+      return false;
+    }
+
+    int first = x >>> 6;
+    int last = (x + size - 1) >>> 6;
+    long firstMask = -1L << x;
+    long lastMask = -1L >>> (63 - ((x + size - 1) & 63));
+
+    for (int row = y; row < y + size; row++) {
+      int base = row * stride;
+      for (int word = first; word <= last; word++) {
+        long mask = -1L;
+        if (word == first) {
+          mask &= firstMask;
+        }
+        if (word == last) {
+          mask &= lastMask;
+        }
+        if ((words[base + word] & mask) != 0) {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Counts the open pixels.
+   * @return The number of open pixels.
+   */
+  public long countOpen() {
+    long open = 0;
+    for (long word : words) {
+      open += Long.bitCount(~word);
+    }
+    return open;
+  }
+
+  /**
+   * Renders the grid, white for open and black for wall.
+   * @return A TYPE_BYTE_GRAY image.
+   */
+  public BufferedImage toImage() {
+    BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    byte[] out = GreyPlaneEngine.samples(img);
+
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        out[y * width + x] = isWall(x, y) ? GreyPlaneEngine.BLACK : GreyPlaneEngine.WHITE;
+      }
+    }
+
+    return img;
+  }
+}
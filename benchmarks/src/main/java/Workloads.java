@@ -0,0 +1,137 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.function.Supplier;
+
+/**
+ * The operations the benchmarks time, set up on a perfect maze from MazeGenerator. JMH will not
+ * generate code for benchmarks in the default package, and code in a named package cannot name the
+ * solver's classes, so the benchmarks in mazesolver.bench look these factories up by name once per
+ * trial and time the returned Supplier, which costs one interface call per operation.
+ */
+public final class Workloads {
+
+  private static final int PASSAGE = 10; // Passage width of the generated mazes
+  private static final int WALL = 2; // Wall thickness of the generated mazes
+
+  private static PrintStream out; // System.out while quiet() has silenced it, null otherwise
+
+  private Workloads() {
+  }
+
+  /**
+   * Sets up one image filter.
+   * @param name The ImageProcessing method: greyScale, gaussianBlur3, gaussianBlur5, edgeDetect,
+   *   processImage or contrastDetect.
+   * @param size The side length of the image, rounded down to whole cells.
+   * @return The filter applied to the image.
+   */
+  public static Supplier<Object> filter(String name, int size) {
+    quiet();
+    BufferedImage image = image(maze(size));
+    ImageProcessing processor = new ImageProcessing();
+    BufferedImage grey = processor.greyScale(image);
+    BufferedImage blurred = processor.gaussianBlur5(processor.gaussianBlur5(grey));
+
+    return switch (name) {
+      case "greyScale" -> () -> processor.greyScale(image);
+      case "gaussianBlur3" -> () -> processor.gaussianBlur3(grey);
+      case "gaussianBlur5" -> () -> processor.gaussianBlur5(grey);
+      case "edgeDetect" -> () -> processor.edgeDetect(blurred, 10);
+      case "processImage" -> () -> new ImageProcessing().processImage(image, 10); // processImage caches the last image's gradients
+      case "contrastDetect" -> () -> processor.contrastDetect(image);
+      default -> throw new IllegalArgumentException("Unknown filter " + name);
+    };
+  }
+
+  /**
+   * Sets up building a MazeSolver, which validates and labels the nodes.
+   * @param size The side length of the maze image, rounded down to whole cells.
+   * @param pixelSize The size of the pixels when solving the maze.
+   * @return The construction.
+   */
+  public static Supplier<Object> construct(int size, int pixelSize) {
+    quiet();
+    SyntheticMaze maze = maze(size);
+    WallGrid grid = grid(maze);
+    return () -> new MazeSolver(grid, pixelSize, maze.getStart(), maze.getEnd());
+  }
+
+  /**
+   * Sets up solving a prepared maze between opposite corners.
+   * @param size The side length of the maze image, rounded down to whole cells.
+   * @param pixelSize The size of the pixels when solving the maze.
+   * @param strategy bfs, astar, bidirectional, jps or junctions.
+   * @return The solve, from a new MazeSolver on the shared PreparedMaze each time.
+   */
+  public static Supplier<Object> solve(int size, int pixelSize, String strategy) {
+    quiet();
+    SyntheticMaze synthetic = maze(size);
+    PreparedMaze maze = new PreparedMaze(grid(synthetic), pixelSize);
+    int[] start = synthetic.getStart();
+    int[] end = synthetic.getEnd();
+    SearchStrategy search;
+    switch (strategy) {
+      case "bfs" -> search = new BreadthFirstSearch();
+      case "astar" -> search = new AStarSearch();
+      case "bidirectional" -> search = new BidirectionalAStarSearch();
+      case "jps" -> search = new JumpPointSearch();
+      case "junctions" -> search = new JunctionGraph(maze.getNodes());
+      default -> throw new IllegalArgumentException("Unknown strategy " + strategy);
+    }
+
+    return () -> {
+      MazeSolver solver = new MazeSolver(maze, start, end);
+      solver.setStrategy(search);
+      return solver.solve();
+    };
+  }
+
+  /**
+   * Generates the perfect maze every benchmark of a size uses.
+   */
+  static SyntheticMaze maze(int size) {
+    int cells = Math.max(1, (size - WALL) / (PASSAGE + WALL));
+    return new MazeGenerator(PASSAGE, WALL).generate(cells, cells, 1);
+  }
+
+  /**
+   * Draws a maze as a colour image, the form images are loaded in.
+   */
+  static BufferedImage image(SyntheticMaze maze) {
+    BufferedImage image = new BufferedImage(maze.getWidth(), maze.getHeight(), BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    g.drawImage(maze.render(0, 0), 0, 0, null);
+    g.dispose();
+    return image;
+  }
+
+  /**
+   * Binarizes a maze the way BatchPipeline does.
+   */
+  static WallGrid grid(SyntheticMaze maze) {
+    return new ImageProcessing().contrastGrid(maze.render(0, 0));
+  }
+
+  /**
+   * Puts back the System.out the factories silenced, for the benchmarks' teardown.
+   */
+  public static synchronized void restore() {
+    if (out != null) {
+      System.setOut(out);
+      out = null;
+    }
+  }
+
+  /**
+   * Silences the solver's progress printing, which would otherwise be timed along with it, until
+   * restore() is called.
+   */
+  private static synchronized void quiet() {
+    if (out == null) {
+      out = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+  }
+}
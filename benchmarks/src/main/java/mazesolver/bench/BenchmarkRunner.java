@@ -0,0 +1,37 @@
+package mazesolver.bench;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks like JMH's own main, taking the same arguments, but always with the GC
+ * profiler on, so every result carries its allocation rate and bytes per operation, and with the
+ * results saved as JSON under jmh-results/ unless -rf / -rff say otherwise.
+ */
+public final class BenchmarkRunner {
+
+  private BenchmarkRunner() {
+  }
+
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+    CommandLineOptions command = new CommandLineOptions(args);
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(command).addProfiler(GCProfiler.class);
+
+    if (!command.getResult().hasValue() && !command.getResultFormat().hasValue()) {
+      new File("jmh-results").mkdirs();
+      options.resultFormat(ResultFormatType.JSON)
+          .result("jmh-results/" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+    }
+
+    new Runner(options.build()).run();
+  }
+}
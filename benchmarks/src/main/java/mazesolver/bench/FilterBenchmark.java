@@ -0,0 +1,40 @@
+package mazesolver.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Each ImageProcessing filter, and the full processImage and contrastDetect paths, on a maze image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+  @Param({"256", "900", "2048"})
+  int size;
+
+  @Param({"greyScale", "gaussianBlur3", "gaussianBlur5", "edgeDetect", "processImage", "contrastDetect"})
+  String filter;
+
+  private Supplier<Object> operation;
+
+  @Setup
+  public void setUp() {
+    operation = Workload.of("filter", filter, size);
+  }
+
+  @TearDown
+  public void tearDown() {
+    Workload.restore();
+  }
+
+  @Benchmark
+  public Object run() {
+    return operation.get();
+  }
+}
@@ -0,0 +1,43 @@
+package mazesolver.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * MazeSolver.solve() between opposite corners of a prepared maze, for each search strategy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolveBenchmark {
+
+  @Param({"256", "900", "2048"})
+  int size;
+
+  @Param({"1", "2", "3"})
+  int pixelSize;
+
+  @Param({"bfs", "astar", "bidirectional", "jps", "junctions"})
+  String strategy;
+
+  private Supplier<Object> solve;
+
+  @Setup
+  public void setUp() {
+    solve = Workload.of("solve", size, pixelSize, strategy);
+  }
+
+  @TearDown
+  public void tearDown() {
+    Workload.restore();
+  }
+
+  @Benchmark
+  public Object solve() {
+    return solve.get();
+  }
+}
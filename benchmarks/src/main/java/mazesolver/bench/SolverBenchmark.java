@@ -0,0 +1,40 @@
+package mazesolver.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * MazeSolver construction, which lays out, validates and labels the nodes, on a maze image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+
+  @Param({"256", "900", "2048"})
+  int size;
+
+  @Param({"1", "2", "3"})
+  int pixelSize;
+
+  private Supplier<Object> construction;
+
+  @Setup
+  public void setUp() {
+    construction = Workload.of("construct", size, pixelSize);
+  }
+
+  @TearDown
+  public void tearDown() {
+    Workload.restore();
+  }
+
+  @Benchmark
+  public Object construct() {
+    return construction.get();
+  }
+}
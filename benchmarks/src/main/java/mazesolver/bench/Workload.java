@@ -0,0 +1,44 @@
+package mazesolver.bench;
+
+import java.lang.reflect.Method;
+import java.util.function.Supplier;
+
+/**
+ * Looks up the default package's Workloads methods, which code in a package cannot name.
+ */
+final class Workload {
+
+  private Workload() {
+  }
+
+  /**
+   * Calls a Workloads factory.
+   * @param factory The method name.
+   * @param args Its arguments, boxed.
+   * @return The operation to time.
+   */
+  @SuppressWarnings("unchecked")
+  static Supplier<Object> of(String factory, Object... args) {
+    return (Supplier<Object>) call(factory, args);
+  }
+
+  /**
+   * Puts back the System.out the factories silenced.
+   */
+  static void restore() {
+    call("restore");
+  }
+
+  private static Object call(String name, Object... args) {
+    try {
+      for (Method method : Class.forName("Workloads").getMethods()) {
+        if (method.getName().equals(name) && method.getParameterCount() == args.length) {
+          return method.invoke(null, args);
+        }
+      }
+    } catch (ReflectiveOperationException ex) {
+      throw new IllegalStateException("Unable to call Workloads." + name, ex);
+    }
+    throw new IllegalArgumentException("No workload " + name);
+  }
+}